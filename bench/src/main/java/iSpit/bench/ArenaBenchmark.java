@@ -0,0 +1,104 @@
+package iSpit.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iSpit.Commons;
+import iSpit.GameWorld;
+import iSpit.TankStore;
+
+/**
+ * Benchmark of the large arenas, thousands of tanks on a map with four
+ * free tiles each, moving and spitting at random and never dying:
+ * a whole tick, and the systems walking the columns of the tank store
+ * (input, movement and firing) on their own. With more than one thread
+ * the ticks are split over a fork-join pool of that many.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArenaBenchmark implements Commons {
+
+	// the ticks of input played over and over
+	private static final int INPUTS = 64;
+
+	@Param({ "1000", "10000", "20000" })
+	int tanks;
+
+	@Param({ "1", "2", "4" })
+	int threads;
+
+	private ForkJoinPool pool;
+	private GameWorld world;
+	private TankStore store;
+	private int[][] inputs;
+	private int step;
+
+	@Setup
+	public void setUp() {
+		int size = (int) Math.ceil(Math.sqrt(tanks * 4.0 / 0.9));
+		world = new GameWorld(Arenas.randomMap(size, 0.1, 42), tanks);
+		store = world.getTankStore();
+		if(threads > 1) {
+			pool = new ForkJoinPool(threads);
+			world.setPool(pool);
+		}
+		for(int i = 0; i < tanks; i++) {
+			store.setLives(i, Integer.MAX_VALUE);
+		}
+		SplittableRandom random = new SplittableRandom(42);
+		inputs = new int[INPUTS][tanks];
+		for(int[] tick : inputs) {
+			for(int i = 0; i < tanks; i++) {
+				tick[i] = random.nextInt(32);
+			}
+		}
+		// the bullets flying as in a match going on
+		for(int i = 0; i < 100; i++) {
+			world.tick(inputs[i % INPUTS]);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if(pool != null)
+			pool.shutdown();
+	}
+
+	@Benchmark
+	public GameWorld tick() {
+		world.tick(inputs[step++ % INPUTS]);
+		return world;
+	}
+
+	@Benchmark
+	public TankStore tanks() {
+		store.setInputs(inputs[step++ % INPUTS]);
+		store.move(0, tanks, world.getMap().getWidth() * BRICK_WIDTH - TANK_WIDTH,
+				world.getMap().getHeight() * BRICK_HEIGHT - TANK_HEIGHT);
+		store.fire(world);
+		// the bullets fired are not the point here
+		world.getBullets().clear();
+		return store;
+	}
+}
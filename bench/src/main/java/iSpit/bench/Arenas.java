@@ -0,0 +1,66 @@
+package iSpit.bench;
+
+import java.util.SplittableRandom;
+
+import iSpit.BulletPool;
+import iSpit.Commons;
+import iSpit.GameWorld;
+import iSpit.TileMap;
+
+/**
+ * Worlds and maps shared by the benchmarks, always the same for a seed
+ * so two runs measure the same thing.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+final class Arenas implements Commons {
+
+	// the directions by their ordinal, values() copies the array each call
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private Arenas() {}
+
+	/**
+	 * Creates a map with random walls, leaving the corners where the
+	 * tanks start free
+	 * @param size the number of tiles on each side
+	 * @param density the part of the tiles that are walls, from 0 to 1
+	 * @param seed representing the random numbers
+	 * @return the map
+	 */
+	static TileMap randomMap(int size, double density, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		TileMap map = new TileMap(size, size);
+		for(int ty = 0; ty < size; ty++) {
+			for(int tx = 0; tx < size; tx++) {
+				// the tanks start on the tiles 1 and 18
+				boolean corner = (tx < 3 && ty < 3) || (tx >= 17 && tx < 20 && ty >= 17 && ty < 20);
+				if(!corner && random.nextDouble() < density)
+					map.setSolid(tx, ty, true);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Fires bullets until a world has the specified number flying,
+	 * spread over the map and in every direction
+	 * @param world representing the world
+	 * @param count the number of bullets wanted
+	 * @param step a number changing the place of the next bullets
+	 * @return the step for the next call
+	 */
+	static int refill(GameWorld world, int count, int step) {
+		BulletPool bullets = world.getBullets();
+		int width = world.getMap().getWidth() * BRICK_WIDTH;
+		int height = world.getMap().getHeight() * BRICK_HEIGHT;
+		while(bullets.size() < count) {
+			step = step * 1103515245 + 12345;
+			int x = (step >>> 8) % width;
+			int y = (step >>> 4) % height;
+			bullets.spawn(x, y, DIRECTIONS[step >>> 30], 0);
+		}
+		return step;
+	}
+}
@@ -0,0 +1,101 @@
+package iSpit.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iSpit.Collisions;
+import iSpit.Commons;
+import iSpit.GameWorld;
+import iSpit.Tank;
+import iSpit.TileMap;
+
+/**
+ * Benchmark of the collisions against maps more and more full of walls:
+ * the whole checkForCollision with bullets flying, the wall query on its
+ * own, and pushing a tank out of the walls.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark implements Commons {
+
+	// boxes checked by one call of intersects()
+	private static final int BOXES = 1024;
+
+	@Param({ "20", "256" })
+	int size;
+
+	@Param({ "0.1", "0.5", "0.9" })
+	double density;
+
+	@Param({ "64" })
+	int bullets;
+
+	private GameWorld world;
+	private TileMap map;
+	private Tank tank;
+	private int[] boxX;
+	private int[] boxY;
+	private int step;
+
+	@Setup
+	public void setUp() {
+		map = Arenas.randomMap(size, density, 42);
+		world = new GameWorld(map);
+		tank = world.getTank(0);
+		SplittableRandom random = new SplittableRandom(42);
+		boxX = new int[BOXES];
+		boxY = new int[BOXES];
+		for(int i = 0; i < BOXES; i++) {
+			boxX[i] = random.nextInt(size * BRICK_WIDTH - TANK_WIDTH);
+			boxY[i] = random.nextInt(size * BRICK_HEIGHT - TANK_HEIGHT);
+		}
+	}
+
+	@Benchmark
+	public GameWorld checkForCollision() {
+		step = Arenas.refill(world, bullets, step);
+		world.checkForCollision();
+		return world;
+	}
+
+	@Benchmark
+	public int intersects() {
+		int hits = 0;
+		for(int i = 0; i < BOXES; i++) {
+			if(map.intersects(boxX[i], boxY[i], TANK_WIDTH, TANK_HEIGHT))
+				hits++;
+		}
+		return hits;
+	}
+
+	@Benchmark
+	public int resolveWalls() {
+		int sum = 0;
+		for(int i = 0; i < BOXES; i++) {
+			tank.setX(boxX[i]);
+			tank.setY(boxY[i]);
+			Collisions.resolveWalls(tank, map);
+			sum += tank.getX() + tank.getY();
+		}
+		return sum;
+	}
+}
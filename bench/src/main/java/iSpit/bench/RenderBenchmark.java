@@ -0,0 +1,87 @@
+package iSpit.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iSpit.Commons;
+import iSpit.FrameState;
+import iSpit.GamePanel;
+import iSpit.GameWorld;
+import iSpit.WallLayer;
+
+/**
+ * Benchmark of the drawing, offscreen into a BufferedImage and headless:
+ * the whole paintComponent of the panel, and the same drawing of a frame
+ * with bullets flying, from copying the world to the last brick.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark implements Commons {
+
+	@Param({ "0", "64", "256" })
+	int bullets;
+
+	private GamePanel panel;
+	private GameWorld world;
+	private FrameState frame;
+	private WallLayer walls;
+	private BufferedImage image;
+	private Graphics2D g;
+
+	@Setup
+	public void setUp() {
+		panel = new GamePanel();
+		panel.setSize(PANEL_WIDTH, PANEL_HEIGHT);
+		world = new GameWorld();
+		Arenas.refill(world, bullets, 0);
+		frame = new FrameState();
+		walls = new WallLayer();
+		image = new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paintComponent() {
+		panel.paint(g);
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage drawFrame() {
+		frame.capture(world);
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, PANEL_WIDTH, PANEL_HEIGHT);
+		panel.drawScore(g, frame);
+		panel.drawTanks(g, frame);
+		panel.drawBullets(g, frame);
+		walls.draw(g, frame.getMap(), 0, 0, PANEL_WIDTH, PANEL_HEIGHT);
+		return image;
+	}
+}
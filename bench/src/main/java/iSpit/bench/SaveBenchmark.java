@@ -0,0 +1,82 @@
+package iSpit.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iSpit.GameWorld;
+import iSpit.SaveFormat;
+
+/**
+ * Benchmark of saving and loading a game, in memory and through a file,
+ * the work behind saveGame and loadGame.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+
+	@Param({ "20", "256" })
+	int size;
+
+	@Param({ "64" })
+	int bullets;
+
+	private GameWorld world;
+	private ByteBuffer buffer;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		world = new GameWorld(Arenas.randomMap(size, 0.3, 7));
+		Arenas.refill(world, bullets, 0);
+		buffer = ByteBuffer.allocate(SaveFormat.maxSize(world));
+		file = File.createTempFile("ispit", ".savedata");
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ByteBuffer write() {
+		buffer.clear();
+		SaveFormat.write(world, buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public GameWorld roundTrip() throws IOException {
+		buffer.clear();
+		SaveFormat.write(world, buffer);
+		buffer.flip();
+		return SaveFormat.read(buffer);
+	}
+
+	@Benchmark
+	public GameWorld fileRoundTrip() throws IOException {
+		SaveFormat.save(world, file);
+		return SaveFormat.load(file);
+	}
+}
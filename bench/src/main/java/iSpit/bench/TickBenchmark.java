@@ -0,0 +1,61 @@
+package iSpit.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iSpit.Commons;
+import iSpit.GameWorld;
+
+/**
+ * Benchmark of one step of the game loop, the same work as
+ * GamePanel.gameUpdate: ticking the world with the input of the players,
+ * with more and more bullets flying. The bullets that leave are fired
+ * again before each tick, so the count stays the same.
+ * Run with -prof gc to see the bytes allocated per tick.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark implements Commons {
+
+	@Param({ "0", "16", "64", "256" })
+	int bullets;
+
+	private GameWorld world;
+	private int[] inputs;
+	private int step;
+
+	@Setup
+	public void setUp() {
+		world = new GameWorld();
+		// the tanks keep moving and spitting, never dying
+		inputs = new int[] { INPUT_DOWN | INPUT_FIRE, INPUT_UP | INPUT_FIRE };
+		for(int i = 0; i < world.getTanks().length; i++) {
+			world.getTanks()[i].setLives(Integer.MAX_VALUE);
+		}
+	}
+
+	@Benchmark
+	public GameWorld tick() {
+		step = Arenas.refill(world, bullets, step);
+		world.tick(inputs);
+		return world;
+	}
+}
@@ -0,0 +1,283 @@
+package iSpit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Program playing many matches between bots without any window, as fast
+ * as all the processors allow, to balance the speed of the tanks, the
+ * delay between bullets and the lives. With hundreds of players it
+ * doubles as a stress test of the simulation.
+ * The matches are split among the threads of a fork-join pool, each
+ * one on its own world, and the result of each match (winner, ticks,
+ * shots and hits) is written as a line of a CSV file.
+ * Every match is played with its own seed, so any of them can be played
+ * again alone. With --swap the two players of a classic match start in
+ * each other's corner, telling an edge of the place from one of the player.
+ * <p>
+ * Usage: BatchRunner matches [--threads n] [--seed s] [--max-ticks t]
+ * [--speed pixels] [--delay ticks] [--lives n] [--players n] [--swap] [--map file] [--out file.csv]
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class BatchRunner implements Commons {
+
+	// matches played by a task without splitting it anymore
+	private static final int BATCH = 64;
+
+	// OPTIONS
+	private int matches = 10000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seed = 1;
+	private int maxTicks = 30 * 60 * 3;
+	private int speed = TANK_SPEED;
+	private int delay = 8;
+	private int lives = 3;
+	private int players = 2;
+	private boolean swap;
+	private File mapFile;
+	private File out;
+
+	// RESULTS
+	private Writer sink;
+	private final LongAdder played = new LongAdder();
+	private final LongAdder draws = new LongAdder();
+	private final LongAdder ticks = new LongAdder();
+	private LongAdder[] wins;
+	private LongAdder[] shots;
+	private LongAdder[] hits;
+
+	/**
+	 * Plays the matches and prints the statistics
+	 * @param args the number of matches and the options
+	 */
+	public static void main(String[] args) {
+		BatchRunner runner = new BatchRunner();
+		try {
+			runner.parse(args);
+		} catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: BatchRunner matches [--threads n] [--seed s] [--max-ticks t]"
+					+ " [--speed pixels] [--delay ticks] [--lives n] [--players n] [--swap] [--map file] [--out file.csv]");
+			return;
+		}
+		try {
+			runner.run();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	// reads the options
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(!arg.startsWith("--")) {
+				matches = Integer.parseInt(arg);
+				continue;
+			}
+			if(arg.equals("--swap")) {
+				swap = true;
+				continue;
+			}
+			if(i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			switch(arg) {
+				case "--threads": threads = Integer.parseInt(value); break;
+				case "--seed": seed = Long.parseLong(value); break;
+				case "--max-ticks": maxTicks = Integer.parseInt(value); break;
+				case "--speed": speed = Integer.parseInt(value); break;
+				case "--delay": delay = Integer.parseInt(value); break;
+				case "--lives": lives = Integer.parseInt(value); break;
+				case "--players": players = Integer.parseInt(value); break;
+				case "--map": mapFile = new File(value); break;
+				case "--out": out = new File(value); break;
+				default: throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+	}
+
+	/**
+	 * Plays all the matches, reporting the progress every second
+	 * @throws IOException if the map can't be read or the results can't be written
+	 */
+	public void run() throws IOException {
+		// failing now rather than in every task
+		TileMap map = mapFile != null ? MapLoader.load(mapFile) : new TileMap(GameWorld.DEFAULT_MAP, 20, 20);
+		try {
+			new GameWorld(map, players);
+		} catch(IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+		wins = adders(players);
+		shots = adders(players);
+		hits = adders(players);
+		if(out != null) {
+			sink = new BufferedWriter(new FileWriter(out));
+			StringBuilder header = new StringBuilder("match,seed,winner,ticks");
+			for(int p = 1; p <= players; p++) {
+				header.append(",shots").append(p);
+			}
+			for(int p = 1; p <= players; p++) {
+				header.append(",hits").append(p);
+			}
+			sink.write(header.append('\n').toString());
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		try {
+			ForkJoinTask<Void> task = pool.submit(new Matches(0, matches));
+			while(!task.isDone()) {
+				try {
+					task.get(1, TimeUnit.SECONDS);
+				} catch(TimeoutException e) {
+					double seconds = (System.nanoTime() - start) / 1e9;
+					System.out.printf("%d / %d matches, %.0f matches/s%n",
+							played.sum(), matches, played.sum() / seconds);
+				} catch(Exception e) {
+					throw new IOException("Batch failed", e);
+				}
+			}
+		} finally {
+			pool.shutdown();
+			if(sink != null)
+				sink.close();
+		}
+		report((System.nanoTime() - start) / 1e9);
+	}
+
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for(int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	// prints the statistics of all the matches
+	private void report(double seconds) {
+		long n = Math.max(played.sum(), 1);
+		System.out.printf("%d matches on %d threads in %.2f s: %.0f matches/s, %.0f ticks/s%n",
+				played.sum(), threads, seconds, played.sum() / seconds, ticks.sum() / seconds);
+		System.out.printf("speed %d, delay %d, lives %d, %d players%s%n", speed, delay, lives, players,
+				swap && players == 2 ? ", corners swapped" : "");
+		System.out.printf("draws %.1f%%, %.0f ticks per match%n",
+				100.0 * draws.sum() / n, (double) ticks.sum() / n);
+		for(int p = 0; p < players; p++) {
+			System.out.printf("player %d: %.1f%% wins, %.1f shots per match, %.1f%% hit%n", p + 1,
+					100.0 * wins[p].sum() / n, (double) shots[p].sum() / n,
+					100.0 * hits[p].sum() / Math.max(shots[p].sum(), 1));
+		}
+	}
+
+	// MATCHES
+	// a range of matches, split in two until small enough
+	private class Matches extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		Matches(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > BATCH) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Matches(from, middle), new Matches(middle, to));
+				return;
+			}
+			try {
+				play(from, to);
+			} catch(IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	// puts two tanks in each other's place, facing the other's way
+	private static void swapCorners(Tank a, Tank b) {
+		int x = a.getX();
+		int y = a.getY();
+		Direction dir = a.getDirection();
+		a.setX(b.getX());
+		a.setY(b.getY());
+		a.setDirection(b.getDirection());
+		b.setX(x);
+		b.setY(y);
+		b.setDirection(dir);
+	}
+
+	// plays a few matches one after the other, writing their results at once
+	private void play(int from, int to) throws IOException {
+		// the map is only read by the matches, one per task is enough;
+		// the bots forget the ways found at each match, so every match
+		// plays out the same from its seed alone
+		TileMap map = mapFile != null ? MapLoader.load(mapFile) : new TileMap(GameWorld.DEFAULT_MAP, 20, 20);
+		BotController bots = new BotController();
+		StringBuilder lines = new StringBuilder();
+		int[] inputs = new int[players];
+		for(int m = from; m < to; m++) {
+			long matchSeed = seed * 0x9E3779B97F4A7C15L + m;
+			SplittableRandom random = new SplittableRandom(matchSeed);
+			GameWorld world = new GameWorld(map, players);
+			for(Tank tank : world.getTanks()) {
+				tank.setSpeed(speed);
+				tank.setFiringDelay(delay);
+				tank.setLives(lives);
+			}
+			if(swap && players == 2)
+				swapCorners(world.getTank(0), world.getTank(1));
+
+			bots.reset();
+			while(!world.isOver() && world.getTick() < maxTicks) {
+				bots.inputs(world, 0, random, inputs);
+				world.tick(inputs);
+			}
+
+			int winner = world.getWinner();
+			if(winner >= 0)
+				wins[winner].increment();
+			else
+				draws.increment();
+			ticks.add(world.getTick());
+			for(int p = 0; p < players; p++) {
+				shots[p].add(world.getShots(p));
+				hits[p].add(world.getHits(p));
+			}
+			played.increment();
+
+			if(sink != null) {
+				lines.append(m).append(',').append(matchSeed).append(',').append(winner + 1)
+					.append(',').append(world.getTick());
+				for(int p = 0; p < players; p++) {
+					lines.append(',').append(world.getShots(p));
+				}
+				for(int p = 0; p < players; p++) {
+					lines.append(',').append(world.getHits(p));
+				}
+				lines.append('\n');
+			}
+		}
+		if(sink != null) {
+			synchronized(sink) {
+				sink.append(lines);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package iSpit;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Class playing tanks instead of people, through the same input bits as
+ * the keys: each bot goes after the closest enemy, finding its way around
+ * the walls with the flow field leading to the tile of the enemy, and
+ * spits at it when in line with no wall in between.
+ * A bot picks its enemy again every RETARGET ticks, the bots taking turns,
+ * and only asks for another field when the enemy moves to another tile,
+ * so a tick costs little more than reading one byte per bot. The fields
+ * are shared by all the bots of a controller during a match.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class BotController implements Commons {
+
+	// ticks between two choices of the enemy of a bot
+	private static final int RETARGET = 16;
+	// one in that many inputs is random, so the bots don't get stuck on each other
+	private static final int WANDER = 10;
+	// tiles the enemy may get away from the end of a way still followed, when no new one is found
+	private static final int NEAR = 3;
+
+	// INSTANCE VARIABLES
+	private final FlowFields fields = new FlowFields();
+	private TileMap map;
+		// the enemy of each bot, -1 for none yet, and the field leading to it
+	private int[] targets = new int[0];
+	private FlowFields.Field[] ways = new FlowFields.Field[0];
+
+	/**
+	 * Gets the input of the bots playing a range of tanks
+	 * @param world representing the world the bots play in
+	 * @param from the first tank played by a bot
+	 * @param random representing the random numbers of the match
+	 * @param inputs the input bits, written from index from on
+	 */
+	public void inputs(GameWorld world, int from, SplittableRandom random, int[] inputs) {
+		Tank[] tanks = world.getTanks();
+		if(targets.length != tanks.length) {
+			targets = new int[tanks.length];
+			ways = new FlowFields.Field[tanks.length];
+			reset();
+		}
+		if(world.getMap() != map) {
+			map = world.getMap();
+			Arrays.fill(ways, null);
+		}
+		long tick = world.getTick();
+		for(int i = from; i < tanks.length; i++) {
+			int t = targets[i];
+			if(t < 0 || t >= tanks.length || tanks[t].isDead() || (tick + i) % RETARGET == 0)
+				targets[i] = t = closest(tanks, i);
+			inputs[i] = t >= 0 && !tanks[i].isDead() ? bot(i, tanks[i], tanks[t], world.getMap(), tick, random) : 0;
+		}
+	}
+
+	/**
+	 * Forgets the enemies of the bots and the ways found, for a new match
+	 * playing out the same whatever the matches played before
+	 */
+	public void reset() {
+		Arrays.fill(targets, -1);
+		Arrays.fill(ways, null);
+		fields.clear();
+	}
+
+	// the closest tank alive to a tank, -1 if it is the last one
+	private static int closest(Tank[] tanks, int me) {
+		int best = -1;
+		long bestDistance = Long.MAX_VALUE;
+		for(int i = 0; i < tanks.length; i++) {
+			if(i == me || tanks[i].isDead())
+				continue;
+			long dx = tanks[i].getX() - tanks[me].getX();
+			long dy = tanks[i].getY() - tanks[me].getY();
+			if(dx * dx + dy * dy < bestDistance) {
+				bestDistance = dx * dx + dy * dy;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	// the input of one bot
+	private int bot(int i, Tank me, Tank enemy, TileMap map, long tick, SplittableRandom random) {
+		if(random.nextInt(WANDER) == 0)
+			return 1 << random.nextInt(5);
+		// from center to center
+		int x = me.getX() + TANK_WIDTH / 2;
+		int y = me.getY() + TANK_HEIGHT / 2;
+		int dx = enemy.getX() + TANK_WIDTH / 2 - x;
+		int dy = enemy.getY() + TANK_HEIGHT / 2 - y;
+		// in line with no wall in between, turning to the enemy and spitting
+		if(Math.abs(dx) < TANK_WIDTH / 2 && map.sweep(x, y, 1, 1, 0, dy) < 0)
+			return (dy < 0 ? INPUT_UP : INPUT_DOWN) | INPUT_FIRE;
+		if(Math.abs(dy) < TANK_HEIGHT / 2 && map.sweep(x, y, 1, 1, dx, 0) < 0)
+			return (dx < 0 ? INPUT_LEFT : INPUT_RIGHT) | INPUT_FIRE;
+
+		// following the way around the walls
+		int ex = Math.floorDiv(x + dx, BRICK_WIDTH);
+		int ey = Math.floorDiv(y + dy, BRICK_HEIGHT);
+		FlowFields.Field way = ways[i];
+		if(way == null || !way.leadsTo(map, ex, ey)) {
+			FlowFields.Field found = fields.get(map, ex, ey, tick);
+			// over the searches of the tick, the way to where the enemy just was still does
+			if(found != null || way == null || way.distance(map, ex, ey) > NEAR)
+				ways[i] = way = found;
+		}
+		int tx = Math.floorDiv(x, BRICK_WIDTH);
+		int ty = Math.floorDiv(y, BRICK_HEIGHT);
+		int next = way != null ? way.next(tx, ty) : -1;
+		if(next > 0)
+			return steer(me, tx, ty, next);
+
+		// on the tile of the enemy or with no way known, getting in line on the closest axis
+		if(Math.abs(dx) < Math.abs(dy))
+			return dx < 0 ? INPUT_LEFT : INPUT_RIGHT;
+		return dy < 0 ? INPUT_UP : INPUT_DOWN;
+	}
+
+	// goes to the next tile, lined up with the current one across the way first so the tank fits
+	private static int steer(Tank me, int tx, int ty, int next) {
+		int speed = Math.max(me.getSpeed(), 1);
+		if(next == INPUT_UP || next == INPUT_DOWN) {
+			int off = tx * BRICK_WIDTH - me.getX();
+			if(Math.abs(off) >= speed)
+				return off < 0 ? INPUT_LEFT : INPUT_RIGHT;
+		} else {
+			int off = ty * BRICK_HEIGHT - me.getY();
+			if(Math.abs(off) >= speed)
+				return off < 0 ? INPUT_UP : INPUT_DOWN;
+		}
+		return next;
+	}
+
+	// GETTERS
+	/**
+	 * Get the flow fields of the bots
+	 * @return the cache of the fields */
+	public FlowFields getFields() { return fields; }
+}
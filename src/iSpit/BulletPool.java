@@ -0,0 +1,239 @@
+package iSpit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class holding all the bullets flying in a world. A bullet hurts when
+ * touched. Ouch!
+ * The bullets are kept in primitive arrays of a fixed capacity, so
+ * firing doesn't create any object and removing a bullet just moves
+ * the last one into its place. The speed is kept signed along each axis,
+ * so moving a bullet is the same two additions whatever its direction.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class BulletPool implements Commons {
+
+	// the directions by their ordinal, values() copies the array each call
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// INSTANCE VARIABLES
+		// position
+	private int[] x;
+	private int[] y;
+		// speed, signed by the direction
+	private int[] vx;
+	private int[] vy;
+		// direction ordinal and the player that fired
+	private byte[] direction;
+	private short[] owner;
+		// number of bullets flying
+	private int size;
+		// the bullets leaving this area are gone, in pixels
+	private int width = PANEL_WIDTH;
+	private int height = PANEL_HEIGHT;
+
+	/**
+	 * Creates an empty pool
+	 * @param capacity the most bullets that can fly at the same time
+	 */
+	public BulletPool(int capacity) {
+		x = new int[capacity];
+		y = new int[capacity];
+		vx = new int[capacity];
+		vy = new int[capacity];
+		direction = new byte[capacity];
+		owner = new short[capacity];
+	}
+
+	/**
+	 * Fires a bullet from a specified place, facing a specified direction.
+	 * When the pool is full the bullet is not fired.
+	 * @param x the bullet position in pixels on horizontal axis from left to right
+	 * @param y the bullet position in pixels on vertical axis from top to bottom
+	 * @param dir the direction the bullet is facing
+	 * @param player the index of the player that fired it
+	 * @return a boolean describing if the bullet was fired or not
+	 */
+	public boolean spawn(int x, int y, Direction dir, int player) {
+		if(size == this.x.length)
+			return false;
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		// setting the speed
+		setSpeed(i, dir, 16);
+		direction[i] = (byte) dir.ordinal();
+		owner[i] = (short) player;
+		return true;
+	}
+
+	/**
+	 * Removes a bullet, the last bullet takes its index
+	 * @param i the index of the bullet
+	 */
+	public void remove(int i) {
+		int last = --size;
+		x[i] = x[last];
+		y[i] = y[last];
+		vx[i] = vx[last];
+		vy[i] = vy[last];
+		direction[i] = direction[last];
+		owner[i] = owner[last];
+	}
+
+	/**
+	 * Removes all the bullets
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	// SAVE AND LOAD
+	/** Bytes written for each bullet, older readers skip the ones they don't know */
+	static final int RECORD_SIZE = 19;
+
+	/**
+	 * Writes all the bullets, RECORD_SIZE bytes each
+	 * @param b the buffer to write to
+	 */
+	void save(ByteBuffer b) {
+		for(int i = 0; i < size; i++) {
+			b.putInt(x[i]);
+			b.putInt(y[i]);
+			// the speed on both axes, as the direction tells which one
+			int speed = Math.abs(vx[i]) + Math.abs(vy[i]);
+			b.putInt(speed);
+			b.putInt(speed);
+			b.put(direction[i]);
+			b.put((byte) owner[i]);
+			b.put((byte) (owner[i] >>> 8)); // the rest of the player index
+		}
+	}
+
+	/**
+	 * Replaces the bullets with the ones written by save(),
+	 * the ones not fitting in the pool are dropped
+	 * @param b the buffer to read from
+	 * @param count the number of bullets
+	 * @param recordSize the bytes of each bullet,
+	 *			can be more than this version knows about
+	 */
+	void load(ByteBuffer b, int count, int recordSize) {
+		size = 0;
+		for(int n = 0; n < count; n++) {
+			int start = b.position();
+			if(size < x.length) {
+				int i = size++;
+				x[i] = b.getInt();
+				y[i] = b.getInt();
+				int dx = b.getInt();
+				int dy = b.getInt();
+				direction[i] = b.get();
+				Direction dir = DIRECTIONS[direction[i]];
+				setSpeed(i, dir, dir == Direction.UP || dir == Direction.DOWN ? dy : dx);
+				owner[i] = (short) (b.get() & 0xFF);
+				if(recordSize >= RECORD_SIZE)
+					owner[i] |= (b.get() & 0xFF) << 8;
+			}
+			b.position(start + recordSize);
+		}
+	}
+
+	// UPDATE METHOD
+	/**
+	 * Updates the bullet movement checking if reaching the end
+	 * of the map
+	 * @param i the index of the bullet
+	 * @return a boolean if reached the end or not
+	 */
+	public boolean update(int i) {
+		x[i] += vx[i];
+		y[i] += vy[i];
+		return isGone(i);
+	}
+
+	/**
+	 * Moves a range of bullets, each one only changing itself so the
+	 * ranges can move on different threads. The ones leaving the map
+	 * are removed afterwards, once checked for what they hit on the way
+	 * @param from the index of the first bullet
+	 * @param to the index after the last bullet
+	 */
+	public void move(int from, int to) {
+		for(int i = from; i < to; i++) {
+			x[i] += vx[i];
+			y[i] += vy[i];
+		}
+	}
+
+	/**
+	 * Checks if a bullet left the map
+	 * @param i the index of the bullet
+	 * @return a boolean describing if the bullet is gone or not
+	 */
+	public boolean isGone(int i) {
+		return x[i] < -BULLET_WIDTH || x[i] > width + BULLET_WIDTH
+				|| y[i] < -BULLET_HEIGHT || y[i] > height + BULLET_HEIGHT;
+	}
+
+	// sets the speed of a bullet along the axis of its direction
+	private void setSpeed(int i, Direction dir, int speed) {
+		vx[i] = dir == Direction.LEFT ? -speed : dir == Direction.RIGHT ? speed : 0;
+		vy[i] = dir == Direction.UP ? -speed : dir == Direction.DOWN ? speed : 0;
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of bullets flying
+	 * @return the number of bullets */
+	public int size() { return size; }
+	/**
+	 * Get the most bullets that can fly at the same time
+	 * @return the capacity of the pool */
+	public int capacity() { return x.length; }
+	/**
+	 * Get the current x axis position
+	 * @param i the index of the bullet
+	 * @return the current bullet position in pixels on horizontal axis
+	 *			from left to right */
+	public int getX(int i) { return x[i]; }
+	/**
+	 * Get the current y axis position
+	 * @param i the index of the bullet
+	 * @return the current bullet position in pixels on vertical axis
+	 *			from top to bottom */
+	public int getY(int i) { return y[i]; }
+	/**
+	 * Get the direction the bullet is flying
+	 * @param i the index of the bullet
+	 * @return the direction */
+	public Direction getDirection(int i) { return DIRECTIONS[direction[i]]; }
+	/**
+	 * Get the pixels the bullet moves in a tick on the horizontal axis
+	 * @param i the index of the bullet
+	 * @return the speed, negative to the left */
+	public int getSpeedX(int i) { return vx[i]; }
+	/**
+	 * Get the pixels the bullet moves in a tick on the vertical axis
+	 * @param i the index of the bullet
+	 * @return the speed, negative upwards */
+	public int getSpeedY(int i) { return vy[i]; }
+	/**
+	 * Get the player that fired the bullet
+	 * @param i the index of the bullet
+	 * @return the index of the player */
+	public int getOwner(int i) { return owner[i]; }
+
+	// SETTERS
+	/**
+	 * Sets the area the bullets fly in, the ones leaving it are gone
+	 * @param width the width of the area in pixels
+	 * @param height the height of the area in pixels
+	 */
+	public void setBounds(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+}
@@ -0,0 +1,239 @@
+package iSpit;
+
+/**
+ * Class with the collision checks of the game. Everything works on plain
+ * coordinates, nothing is created while checking, and overlapping boxes
+ * are pushed apart along the axis where they overlap the least.
+ * Touching edges don't count as overlapping, the same as
+ * Rectangle.intersects.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class Collisions implements Commons {
+
+	// how many walls a tank is pushed out of in a single tick
+	private static final int MAX_WALL_PUSHES = 4;
+
+	private Collisions() {}
+
+	// BOXES
+	/**
+	 * Checks if two boxes overlap
+	 * @return a boolean describing if the boxes overlap or not
+	 */
+	public static boolean overlaps(int ax, int ay, int aw, int ah,
+			int bx, int by, int bw, int bh) {
+		return ax < bx + bw && bx < ax + aw && ay < by + bh && by < ay + ah;
+	}
+
+	/**
+	 * Gets how much two segments of an axis overlap
+	 * @param a the start of the first segment
+	 * @param aw the length of the first segment
+	 * @param b the start of the second segment
+	 * @param bw the length of the second segment
+	 * @return the overlap in pixels, 0 or less when not overlapping
+	 */
+	public static int overlap(int a, int aw, int b, int bw) {
+		return Math.min(a + aw, b + bw) - Math.max(a, b);
+	}
+
+	/**
+	 * Gets which way the first segment has to move to leave the second,
+	 * towards the side of its centre
+	 * @return -1 for left / up, 1 for right / down
+	 */
+	public static int side(int a, int aw, int b, int bw) {
+		return 2 * a + aw < 2 * b + bw ? -1 : 1;
+	}
+
+	/**
+	 * Gets how far a box moving along one axis goes before it overlaps
+	 * another box, so a box moving fast can't jump over the other one
+	 * @param x the moving box position in pixels on horizontal axis
+	 * @param y the moving box position in pixels on vertical axis
+	 * @param w the moving box width in pixels
+	 * @param h the moving box height in pixels
+	 * @param vx the move on the horizontal axis, 0 when moving vertically
+	 * @param vy the move on the vertical axis, 0 when moving horizontally
+	 * @return the distance in pixels, 0 if overlapping from the start,
+	 * 			-1 if the boxes don't overlap anywhere on the way
+	 */
+	public static int sweep(int x, int y, int w, int h, int vx, int vy,
+			int bx, int by, int bw, int bh) {
+		// the first and the last distance the boxes overlap at
+		int near;
+		int far;
+		if(vx != 0) {
+			if(overlap(y, h, by, bh) <= 0)
+				return -1;
+			near = vx > 0 ? bx - x - w + 1 : x - bx - bw + 1;
+			far = vx > 0 ? bx + bw - x - 1 : x + w - bx - 1;
+		} else if(vy != 0) {
+			if(overlap(x, w, bx, bw) <= 0)
+				return -1;
+			near = vy > 0 ? by - y - h + 1 : y - by - bh + 1;
+			far = vy > 0 ? by + bh - y - 1 : y + h - by - 1;
+		} else {
+			return overlaps(x, y, w, h, bx, by, bw, bh) ? 0 : -1;
+		}
+		near = Math.max(near, 0);
+		return near <= far && near <= Math.abs(vx + vy) ? near : -1;
+	}
+
+	// TANKS
+	/**
+	 * Pushes apart two tanks if they overlap. A tank standing still is
+	 * not pushed by a moving one, two moving tanks share the push, and a
+	 * tank that would end up in a wall leaves all the push to the other one.
+	 * @param a the first tank
+	 * @param b the second tank
+	 * @param map the walls
+	 */
+	public static void resolvePair(Tank a, Tank b, TileMap map) {
+		int ox = overlap(a.getX(), TANK_WIDTH, b.getX(), TANK_WIDTH);
+		int oy = overlap(a.getY(), TANK_HEIGHT, b.getY(), TANK_HEIGHT);
+		if(ox <= 0 || oy <= 0)
+			return;
+
+		// along the smallest overlap, or the other axis if both
+		// tanks are stuck against walls
+		boolean onX = xAxis(a.getStore(), a.getRow(), ox, oy);
+		if(!separate(a, b, map, onX, onX ? ox : oy))
+			separate(a, b, map, !onX, onX ? oy : ox);
+	}
+
+	// pushes two tanks apart along an axis, a tank standing still is not
+	// pushed by a moving one and a tank that would end up in a wall
+	// leaves all the push to the other one
+	// returns false if neither can be pushed
+	private static boolean separate(Tank a, Tank b, TileMap map, boolean onX, int depth) {
+		boolean aMoving = isMoving(a);
+		boolean bMoving = isMoving(b);
+		int sa = onX ? side(a.getX(), TANK_WIDTH, b.getX(), TANK_WIDTH)
+				: side(a.getY(), TANK_HEIGHT, b.getY(), TANK_HEIGHT);
+		int dx = onX ? sa : 0;
+		int dy = onX ? 0 : sa;
+
+		// the share of the push each tank takes
+		int pushA = aMoving == bMoving ? (depth + 1) / 2 : (aMoving ? depth : 0);
+		boolean aBlocked = blocked(map, a.getX() + dx * depth, a.getY() + dy * depth);
+		boolean bBlocked = blocked(map, b.getX() - dx * depth, b.getY() - dy * depth);
+		if(aBlocked && bBlocked)
+			return false;
+		if(aBlocked)
+			pushA = 0;
+		else if(bBlocked)
+			pushA = depth;
+		int pushB = depth - pushA;
+
+		if(onX) {
+			pushX(a.getStore(), a.getRow(), sa * pushA);
+			pushX(b.getStore(), b.getRow(), -sa * pushB);
+		} else {
+			pushY(a.getStore(), a.getRow(), sa * pushA);
+			pushY(b.getStore(), b.getRow(), -sa * pushB);
+		}
+		return true;
+	}
+
+	/**
+	 * Pushes a tank out of the walls it overlaps, the deepest one first,
+	 * and keeps it inside the map
+	 * @param t the tank
+	 * @param map the walls
+	 */
+	public static void resolveWalls(Tank t, TileMap map) {
+		resolveWalls(t.getStore(), t.getRow(), map);
+	}
+
+	/**
+	 * Pushes a tank of a store out of the walls it overlaps, the deepest
+	 * one first, and keeps it inside the map
+	 * @param tanks the store holding the tank
+	 * @param i the index of the tank
+	 * @param map the walls
+	 */
+	public static void resolveWalls(TankStore tanks, int i, TileMap map) {
+		for(int n = 0; n < MAX_WALL_PUSHES; n++) {
+			int x = tanks.getX(i);
+			int y = tanks.getY(i);
+			int tx0 = Math.floorDiv(x, BRICK_WIDTH);
+			int ty0 = Math.floorDiv(y, BRICK_HEIGHT);
+			int tx1 = Math.floorDiv(x + TANK_WIDTH - 1, BRICK_WIDTH);
+			int ty1 = Math.floorDiv(y + TANK_HEIGHT - 1, BRICK_HEIGHT);
+
+			// the wall overlapping the most
+			int bestOx = 0;
+			int bestOy = 0;
+			int bestX = 0;
+			int bestY = 0;
+			for(int ty = ty0; ty <= ty1; ty++) {
+				for(int tx = tx0; tx <= tx1; tx++) {
+					if(!map.isSolid(tx, ty))
+						continue;
+					int ox = overlap(x, TANK_WIDTH, tx * BRICK_WIDTH, BRICK_WIDTH);
+					int oy = overlap(y, TANK_HEIGHT, ty * BRICK_HEIGHT, BRICK_HEIGHT);
+					if(ox * oy > bestOx * bestOy) {
+						bestOx = ox;
+						bestOy = oy;
+						bestX = tx * BRICK_WIDTH;
+						bestY = ty * BRICK_HEIGHT;
+					}
+				}
+			}
+			if(bestOx <= 0 || bestOy <= 0)
+				break;
+
+			if(xAxis(tanks, i, bestOx, bestOy))
+				pushX(tanks, i, side(x, TANK_WIDTH, bestX, BRICK_WIDTH) * bestOx);
+			else
+				pushY(tanks, i, side(y, TANK_HEIGHT, bestY, BRICK_HEIGHT) * bestOy);
+		}
+
+		// keeping it inside the map
+		int maxX = map.getWidth() * BRICK_WIDTH - TANK_WIDTH;
+		int maxY = map.getHeight() * BRICK_HEIGHT - TANK_HEIGHT;
+		if(tanks.getX(i) < 0) tanks.setX(i, 0);
+		if(tanks.getX(i) > maxX) tanks.setX(i, maxX);
+		if(tanks.getY(i) < 0) tanks.setY(i, 0);
+		if(tanks.getY(i) > maxY) tanks.setY(i, maxY);
+	}
+
+	// picks the axis with the smallest overlap, on a tie the one
+	// the tank is moving along
+	private static boolean xAxis(TankStore tanks, int i, int ox, int oy) {
+		if(ox != oy)
+			return ox < oy;
+		return tanks.is(i, TankStore.LEFT | TankStore.RIGHT) && !tanks.is(i, TankStore.UP | TankStore.DOWN);
+	}
+
+	// checks if a tank at a place would be in a wall or out of the map
+	private static boolean blocked(TileMap map, int x, int y) {
+		return x < 0 || y < 0
+				|| x > map.getWidth() * BRICK_WIDTH - TANK_WIDTH
+				|| y > map.getHeight() * BRICK_HEIGHT - TANK_HEIGHT
+				|| map.intersects(x, y, TANK_WIDTH, TANK_HEIGHT);
+	}
+
+	private static boolean isMoving(Tank t) {
+		return t.getUp() || t.getDown() || t.getLeft() || t.getRight();
+	}
+
+	// moves a tank on the horizontal axis, blocking it from going back
+	private static void pushX(TankStore tanks, int i, int dx) {
+		if(dx == 0)
+			return;
+		tanks.setX(i, tanks.getX(i) + dx);
+		tanks.set(i, dx < 0 ? TankStore.COLLISION_RIGHT : TankStore.COLLISION_LEFT, true);
+	}
+
+	// moves a tank on the vertical axis, blocking it from going back
+	private static void pushY(TankStore tanks, int i, int dy) {
+		if(dy == 0)
+			return;
+		tanks.setY(i, tanks.getY(i) + dy);
+		tanks.set(i, dy < 0 ? TankStore.COLLISION_DOWN : TankStore.COLLISION_UP, true);
+	}
+}
@@ -27,4 +27,11 @@ public interface Commons {
 	
 	public static final int BULLET_WIDTH = 5;
 	public static final int BULLET_HEIGHT = 2;
+	
+	//	input bits, one int per player and tick
+	public static final int INPUT_UP = 1;
+	public static final int INPUT_DOWN = 2;
+	public static final int INPUT_LEFT = 4;
+	public static final int INPUT_RIGHT = 8;
+	public static final int INPUT_FIRE = 16;
 }
@@ -0,0 +1,161 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Program checking that a match plays out the same whatever runs it.
+ * Arenas of 2 to 20000 tanks are played with random input three times:
+ * on one thread while recording a replay, split over a fork-join pool,
+ * and played back from the replay. The saved state of the world is
+ * hashed every 50 ticks of each run and the hashes must all be the same,
+ * or the parallel ticks, the replays or the saves are broken.
+ * Run it after changing anything a tick goes through, like the
+ * collisions or the TankStore. The hashes are printed too, a change
+ * that should not touch the simulation must not change them.
+ * <p>
+ * Usage: DeterminismCheck [--threads n] [--ticks t] [--seed s]
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class DeterminismCheck implements Commons {
+
+	// the arenas played, in tanks
+	private static final int[] ARENAS = { 2, 300, 5000, 20000 };
+	// ticks between two hashes of the world
+	private static final int HASH_INTERVAL = 50;
+
+	/**
+	 * Plays the arenas and tells if every run ended the same
+	 * @param args the options
+	 */
+	public static void main(String[] args) {
+		int threads = 4;
+		int ticks = 400;
+		long seed = 3;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--ticks": ticks = Integer.parseInt(args[++i]); break;
+				case "--seed": seed = Long.parseLong(args[++i]); break;
+				default:
+					System.out.println("Usage: DeterminismCheck [--threads n] [--ticks t] [--seed s]");
+					return;
+			}
+		}
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 2));
+		boolean same = true;
+		try {
+			for(int players : ARENAS) {
+				same &= check(players, ticks, seed, pool);
+			}
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+			same = false;
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println(same ? "every run played out the same" : "DIFFERENT RUNS");
+		if(!same)
+			System.exit(1);
+	}
+
+	/**
+	 * Plays an arena on one thread, on the pool and from the replay
+	 * of the first run, printing the hashes
+	 * @param players the number of tanks
+	 * @param ticks the ticks played
+	 * @param seed the seed of the map and of the input
+	 * @param pool the pool of the parallel run
+	 * @return a boolean describing if the three runs hashed the same
+	 * @throws IOException if the replay can't be written or read
+	 */
+	public static boolean check(int players, int ticks, long seed, ForkJoinPool pool) throws IOException {
+		TileMap map = arena(players, seed);
+		File file = File.createTempFile("ispit", ".replay");
+		try {
+			long[] single;
+			// a single keyframe, the whole replay is simulated again
+			ReplayRecorder recorder = new ReplayRecorder(file, players, Integer.MAX_VALUE);
+			try {
+				single = play(new GameWorld(map, players), ticks, seed, recorder);
+			} finally {
+				recorder.close();
+			}
+			GameWorld world = new GameWorld(map, players);
+			world.setPool(pool);
+			long[] pooled = play(world, ticks, seed, null);
+			long[] replayed = replay(file, ticks);
+
+			boolean same = Arrays.equals(single, pooled) && Arrays.equals(single, replayed);
+			System.out.printf("%d tanks, %d ticks: hash %d, pool %s, replay %s%n", players, ticks,
+					Arrays.hashCode(single), Arrays.equals(single, pooled) ? "same" : "DIFFERENT",
+					Arrays.equals(single, replayed) ? "same" : "DIFFERENT");
+			return same;
+		} finally {
+			if(!file.delete())
+				file.deleteOnExit();
+		}
+	}
+
+	// a map with room for the tanks, one tile in ten a brick
+	private static TileMap arena(int players, long seed) {
+		int side = Math.max(20, (int) Math.ceil(Math.sqrt(players * 4.0)));
+		SplittableRandom random = new SplittableRandom(seed);
+		TileMap map = new TileMap(side, side);
+		for(int ty = 0; ty < side; ty++) {
+			for(int tx = 0; tx < side; tx++) {
+				if(random.nextInt(10) == 0)
+					map.setSolid(tx, ty, true);
+			}
+		}
+		return map;
+	}
+
+	// ticks a world with random input, recording it if asked
+	private static long[] play(GameWorld world, int ticks, long seed, ReplayRecorder recorder) throws IOException {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] inputs = new int[world.getTanks().length];
+		long[] hashes = new long[ticks / HASH_INTERVAL];
+		for(int t = 0; t < ticks; t++) {
+			for(int p = 0; p < inputs.length; p++) {
+				inputs[p] = random.nextInt(32);
+			}
+			if(recorder != null)
+				recorder.record(world, inputs);
+			world.tick(inputs);
+			if((t + 1) % HASH_INTERVAL == 0)
+				hashes[t / HASH_INTERVAL] = hash(world);
+		}
+		return hashes;
+	}
+
+	// plays a replay back from its first keyframe
+	private static long[] replay(File file, int ticks) throws IOException {
+		ReplayPlayer player = new ReplayPlayer(file);
+		long[] hashes = new long[ticks / HASH_INTERVAL];
+		for(int t = 0; t < ticks; t++) {
+			if(!player.step())
+				throw new IOException("The replay ends after " + t + " ticks");
+			if((t + 1) % HASH_INTERVAL == 0)
+				hashes[t / HASH_INTERVAL] = hash(player.getWorld());
+		}
+		return hashes;
+	}
+
+	// the saved state of a world, hashed
+	private static long hash(GameWorld world) {
+		ByteBuffer b = ByteBuffer.allocate(SaveFormat.maxSize(world));
+		SaveFormat.write(world, b);
+		long hash = 0;
+		for(int i = 0; i < b.position(); i++) {
+			hash = hash * 31 + b.get(i);
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,236 @@
+package iSpit;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Class keeping the ways to the tiles the bots go after. A flow field
+ * tells, for every free tile around a target tile, which way to go to
+ * get one tile closer to it around the walls. It is found once with a
+ * breadth-first search from the target and then shared by all the bots
+ * going to that tile, so hundreds of bots chasing the same tank cost a
+ * single search.
+ * The fields used the least recently are dropped when there are too many.
+ * A change of the walls only drops the fields covering the chunk of the
+ * map it happened in, and these are found again when asked, a few each
+ * tick: the bots follow the old ways for a few ticks instead.
+ * A cache is only used by one thread at a time.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class FlowFields implements Commons {
+
+	/** Tiles covered on each side of the target, the bots farther away head straight to it */
+	public static final int RADIUS = 32;
+	// tiles on each side of a field
+	private static final int SIDE = 2 * RADIUS + 1;
+	// the most fields kept
+	private static final int CAPACITY = 256;
+	// the most searches in a tick
+	private static final int SEARCHES_PER_TICK = 4;
+	// the way of a wall tile, only told apart from the free tiles not reached yet while searching
+	private static final byte WALL = -2;
+
+	/**
+	 * The way to a target tile from the tiles around it
+	 */
+	static final class Field {
+		// the tile the field leads to, as ty * width + tx, and the version of the map it was found on
+		private int target = -1;
+		private int version;
+		// the tiles covered
+		private int left;
+		private int top;
+		private int width;
+		private int height;
+		// the input bit leading to the next tile, 0 for the target, negative for the tiles with no way
+		private byte[] next = new byte[0];
+
+		/**
+		 * Gets the way to go from a tile
+		 * @param tx the tile column from left to right
+		 * @param ty the tile row from top to bottom
+		 * @return the input bit (INPUT_UP, ...) leading one tile closer,
+		 * 			0 on the target, -1 outside the field or with no way to it
+		 */
+		int next(int tx, int ty) {
+			tx -= left;
+			ty -= top;
+			if(tx < 0 || ty < 0 || tx >= width || ty >= height)
+				return -1;
+			return Math.max(next[ty * width + tx], -1);
+		}
+
+		/**
+		 * Checks if the field still leads to a tile, it may have been
+		 * dropped and reused for another one, or the walls changed
+		 * @param map representing the walls
+		 * @param tx the target tile column from left to right
+		 * @param ty the target tile row from top to bottom
+		 * @return a boolean describing if the field can be followed or not
+		 */
+		boolean leadsTo(TileMap map, int tx, int ty) {
+			return target == ty * map.getWidth() + tx && isFresh(map);
+		}
+
+		/**
+		 * Checks if no wall changed in the chunks around the field since
+		 * it was found, the changes elsewhere don't matter to it
+		 * @param map representing the walls
+		 * @return a boolean describing if the field is still right or not
+		 */
+		boolean isFresh(TileMap map) {
+			if(version == map.getVersion())
+				return true;
+			if(map.getVersion(left, top, left + width - 1, top + height - 1) > version)
+				return false;
+			// the next check is the quick one again
+			version = map.getVersion();
+			return true;
+		}
+
+		/**
+		 * Gets how far the target of the field is from a tile
+		 * @param map representing the walls
+		 * @param tx the tile column from left to right
+		 * @param ty the tile row from top to bottom
+		 * @return the distance in tiles, along both axes
+		 */
+		int distance(TileMap map, int tx, int ty) {
+			return Math.abs(target % map.getWidth() - tx) + Math.abs(target / map.getWidth() - ty);
+		}
+	}
+
+	// INSTANCE VARIABLES
+	private TileMap map;
+		// the fields by target, the least recently used first
+	private final LinkedHashMap<Integer, Field> fields = new LinkedHashMap<Integer, Field>(CAPACITY * 2, 0.75f, true);
+		// only as big as the fields of the map, small maps take little memory
+	private int[] queue = new int[0];
+		// the searches of the current tick
+	private long tick = -1;
+	private int searches;
+		// all the searches so far
+	private long searched;
+
+	/**
+	 * Gets the field leading to a tile, searching it if not known yet or
+	 * found before the walls around it changed. After SEARCHES_PER_TICK searches in
+	 * a tick the old field is given as it is, or null if there is none.
+	 * @param map representing the walls, the fields of another map are dropped
+	 * @param tx the target tile column from left to right
+	 * @param ty the target tile row from top to bottom
+	 * @param tick the tick of the world, counting the searches
+	 * @return the field, null if the target is outside the map or over the searches of the tick
+	 */
+	Field get(TileMap map, int tx, int ty, long tick) {
+		if(map != this.map) {
+			fields.clear();
+			this.map = map;
+		}
+		if(tx < 0 || ty < 0 || tx >= map.getWidth() || ty >= map.getHeight())
+			return null;
+		if(tick != this.tick) {
+			this.tick = tick;
+			searches = 0;
+		}
+		Integer key = ty * map.getWidth() + tx;
+		Field field = fields.get(key);
+		if(field != null && field.isFresh(map))
+			return field;
+		if(searches == SEARCHES_PER_TICK)
+			return field;
+		searches++;
+		if(field == null) {
+			if(fields.size() == CAPACITY) {
+				// the least recently used one is reused
+				Iterator<Field> eldest = fields.values().iterator();
+				field = eldest.next();
+				eldest.remove();
+			} else {
+				field = new Field();
+			}
+			fields.put(key, field);
+		}
+		search(field, tx, ty);
+		return field;
+	}
+
+	/**
+	 * Drops all the fields and the searches of the current tick, so the
+	 * ways of a new match don't depend on the matches played before
+	 */
+	public void clear() {
+		fields.clear();
+		map = null;
+		tick = -1;
+		searches = 0;
+	}
+
+	// breadth-first search of the ways from the tiles around a target to it
+	private void search(Field field, int tx, int ty) {
+		searched++;
+		field.target = ty * map.getWidth() + tx;
+		field.version = map.getVersion();
+		field.left = Math.max(tx - RADIUS, 0);
+		field.top = Math.max(ty - RADIUS, 0);
+		int w = field.width = Math.min(tx + RADIUS, map.getWidth() - 1) - field.left + 1;
+		int h = field.height = Math.min(ty + RADIUS, map.getHeight() - 1) - field.top + 1;
+		if(field.next.length < w * h)
+			field.next = new byte[Math.min(SIDE, map.getWidth()) * Math.min(SIDE, map.getHeight())];
+		if(queue.length < w * h)
+			queue = new int[field.next.length];
+		byte[] next = field.next;
+		Arrays.fill(next, 0, w * h, (byte) -1);
+
+		int start = (ty - field.top) * w + tx - field.left;
+		next[start] = 0;
+		queue[0] = start;
+		int head = 0;
+		int tail = 1;
+		while(head < tail) {
+			int c = queue[head++];
+			int cx = c % w;
+			int cy = c / w;
+			// each free neighbour goes the opposite way to get here
+			if(cy > 0 && open(field, cx, cy - 1, c - w))
+				queue[tail++] = mark(next, c - w, INPUT_DOWN);
+			if(cy < h - 1 && open(field, cx, cy + 1, c + w))
+				queue[tail++] = mark(next, c + w, INPUT_UP);
+			if(cx > 0 && open(field, cx - 1, cy, c - 1))
+				queue[tail++] = mark(next, c - 1, INPUT_RIGHT);
+			if(cx < w - 1 && open(field, cx + 1, cy, c + 1))
+				queue[tail++] = mark(next, c + 1, INPUT_LEFT);
+		}
+	}
+
+	// checks if a tile of a field is free and not reached yet, a wall is
+	// marked the first time so it is only looked up once
+	private boolean open(Field field, int cx, int cy, int c) {
+		if(field.next[c] != -1)
+			return false;
+		if(map.isSolid(field.left + cx, field.top + cy)) {
+			field.next[c] = WALL;
+			return false;
+		}
+		return true;
+	}
+
+	// sets the way of a tile, giving the tile back for the queue
+	private static int mark(byte[] next, int c, int way) {
+		next[c] = (byte) way;
+		return c;
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of fields kept
+	 * @return the number of fields */
+	public int size() { return fields.size(); }
+	/**
+	 * Get the number of searches done since the cache was created
+	 * @return the number of searches */
+	public long getSearches() { return searched; }
+}
@@ -0,0 +1,65 @@
+package iSpit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class handing the frames from the game loop to the drawing without
+ * any lock. It keeps three frames: one being filled by the game loop,
+ * one being drawn, and the latest finished one in the middle. Publishing
+ * and taking a frame just swap indexes with the middle one.
+ * Only one thread may publish and only one thread may draw.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class FrameExchange {
+
+	// set on the middle index when it holds a frame not drawn yet
+	private static final int FRESH = 4;
+	private static final int INDEX = 3;
+
+	// INSTANCE VARIABLES
+	private final FrameState[] frames;
+	private final AtomicInteger middle;
+		// owned by the game loop
+	private int back;
+		// owned by the drawing
+	private int front;
+
+	/**
+	 * Creates the exchange with three empty frames
+	 */
+	public FrameExchange() {
+		frames = new FrameState[] { new FrameState(), new FrameState(), new FrameState() };
+		back = 0;
+		middle = new AtomicInteger(1);
+		front = 2;
+	}
+
+	/**
+	 * Get the frame to be filled by the game loop
+	 * @return the back frame
+	 */
+	public FrameState back() {
+		return frames[back];
+	}
+
+	/**
+	 * Makes the back frame the latest one, called by the game loop
+	 * after filling it
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Get the latest published frame, called by the drawing.
+	 * The frame stays the same until the next call.
+	 * @return the front frame
+	 */
+	public FrameState acquire() {
+		if((middle.get() & FRESH) != 0)
+			front = middle.getAndSet(front) & INDEX;
+		return frames[front];
+	}
+}
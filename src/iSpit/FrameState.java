@@ -0,0 +1,145 @@
+package iSpit;
+
+/**
+ * Class holding a copy of everything needed to draw one frame: the
+ * tanks, the bullets and the walls, as plain numbers. The game loop
+ * fills one after each update and the drawing only ever reads from it,
+ * so it never sees the world in the middle of a tick.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class FrameState implements Commons {
+
+	// the directions by their ordinal, values() copies the array each call
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// INSTANCE VARIABLES
+	private long tick;
+	private boolean over;
+	private TileMap map;
+		// tanks
+	private int tankCount;
+	private int[] tankX = new int[0];
+	private int[] tankY = new int[0];
+	private byte[] tankDirection = new byte[0];
+	private int[] tankPlayer = new int[0];
+	private int[] tankLives = new int[0];
+	private boolean[] tankDead = new boolean[0];
+		// bullets
+	private int bulletCount;
+	private int[] bulletX = new int[0];
+	private int[] bulletY = new int[0];
+	private byte[] bulletDirection = new byte[0];
+
+	/**
+	 * Copies the state of the world, the arrays only grow when
+	 * the world has more tanks or bullets than ever before
+	 * @param world representing the world to copy
+	 */
+	public void capture(GameWorld world) {
+		Tank[] tanks = world.getTanks();
+		tick = world.getTick();
+		over = world.isOver();
+		map = world.getMap();
+
+		tankCount = tanks.length;
+		if(tankX.length < tankCount) {
+			tankX = new int[tankCount];
+			tankY = new int[tankCount];
+			tankDirection = new byte[tankCount];
+			tankPlayer = new int[tankCount];
+			tankLives = new int[tankCount];
+			tankDead = new boolean[tankCount];
+		}
+		for(int i = 0; i < tankCount; i++) {
+			Tank t = tanks[i];
+			tankX[i] = t.getX();
+			tankY[i] = t.getY();
+			tankDirection[i] = (byte) t.getDirection().ordinal();
+			tankPlayer[i] = t.getPlayer();
+			tankLives[i] = t.getLives();
+			tankDead[i] = t.isDead();
+		}
+
+		BulletPool bullets = world.getBullets();
+		bulletCount = bullets.size();
+		if(bulletX.length < bulletCount) {
+			bulletX = new int[bullets.capacity()];
+			bulletY = new int[bullets.capacity()];
+			bulletDirection = new byte[bullets.capacity()];
+		}
+		for(int i = 0; i < bulletCount; i++) {
+			bulletX[i] = bullets.getX(i);
+			bulletY[i] = bullets.getY(i);
+			bulletDirection[i] = (byte) bullets.getDirection(i).ordinal();
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the tick the frame was taken at
+	 * @return the tick */
+	public long getTick() { return tick; }
+	/**
+	 * Get if the game was over in this frame
+	 * @return a boolean describing if the game is over or not */
+	public boolean isOver() { return over; }
+	/**
+	 * Get the walls
+	 * @return the tile map, null before the first capture */
+	public TileMap getMap() { return map; }
+	/**
+	 * Get the number of tanks
+	 * @return the number of tanks */
+	public int getTankCount() { return tankCount; }
+	/**
+	 * Get the x axis position of a tank
+	 * @param i the index of the tank
+	 * @return the position in pixels from left to right */
+	public int getTankX(int i) { return tankX[i]; }
+	/**
+	 * Get the y axis position of a tank
+	 * @param i the index of the tank
+	 * @return the position in pixels from top to bottom */
+	public int getTankY(int i) { return tankY[i]; }
+	/**
+	 * Get the direction a tank is facing
+	 * @param i the index of the tank
+	 * @return the direction */
+	public Direction getTankDirection(int i) { return DIRECTIONS[tankDirection[i]]; }
+	/**
+	 * Get the player owning a tank
+	 * @param i the index of the tank
+	 * @return the index of the player */
+	public int getTankPlayer(int i) { return tankPlayer[i]; }
+	/**
+	 * Get the lives left of a tank
+	 * @param i the index of the tank
+	 * @return the number of lives */
+	public int getTankLives(int i) { return tankLives[i]; }
+	/**
+	 * Get if a tank is dead
+	 * @param i the index of the tank
+	 * @return a boolean describing if the tank is dead or not */
+	public boolean isTankDead(int i) { return tankDead[i]; }
+	/**
+	 * Get the number of bullets
+	 * @return the number of bullets */
+	public int getBulletCount() { return bulletCount; }
+	/**
+	 * Get the x axis position of a bullet
+	 * @param i the index of the bullet
+	 * @return the position in pixels from left to right */
+	public int getBulletX(int i) { return bulletX[i]; }
+	/**
+	 * Get the y axis position of a bullet
+	 * @param i the index of the bullet
+	 * @return the position in pixels from top to bottom */
+	public int getBulletY(int i) { return bulletY[i]; }
+	/**
+	 * Get the direction a bullet is flying
+	 * @param i the index of the bullet
+	 * @return the direction */
+	public Direction getBulletDirection(int i) { return DIRECTIONS[bulletDirection[i]]; }
+}
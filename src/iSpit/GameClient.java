@@ -0,0 +1,329 @@
+package iSpit;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * Class connecting a player to a game server. It sends the input of the
+ * player and keeps a copy of the world the server runs, to be drawn.
+ * <p>
+ * The server answers an input a round trip later, so the client doesn't
+ * wait for it: the tank of the player moves and fires right away, as
+ * the server will most likely move it. Each state received is the truth
+ * up to the last input the server applied; the inputs sent since are
+ * played again on top of it, so a wrong guess is corrected without a jump
+ * back in time. The other tanks are drawn a little in the past, moving
+ * smoothly between the states received even when they come unevenly.
+ * <p>
+ * The socket doesn't block: the game thread sends and polls once per
+ * tick, with no thread of its own.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class GameClient implements Commons {
+
+	private static final int IN_SIZE = 64 * 1024;
+	private static final int OUT_SIZE = 1024;
+	// inputs kept until the server applies them, a power of 2
+	private static final int PENDING = 256;
+	// states kept to draw the other tanks from, a power of 2
+	private static final int HISTORY = 32;
+	// ticks the other tanks are drawn behind the latest state
+	private static final double INTERPOLATION_DELAY = 2;
+
+	// INSTANCE VARIABLES
+	private final SocketChannel channel;
+	private ByteBuffer in = ByteBuffer.allocate(IN_SIZE);
+	private final ByteBuffer out = ByteBuffer.allocate(OUT_SIZE);
+		// the world drawn: the latest state with the guesses on top
+	private GameWorld world;
+	private int player = -1;
+		// the inputs sent, by sequence
+	private final int[] pending = new int[PENDING];
+	private int sequence;
+	private int ackedSequence;
+		// the first sequence sent for the current game
+	private int startSequence;
+		// the latest state received, played again after each new one
+	private ByteBuffer latest = ByteBuffer.allocate(1024);
+	private boolean received;
+	private long states;
+		// the states that moved the tank of the player from where it was guessed to be
+	private long corrections;
+		// where the tanks were in the latest states, [slot * tanks + tank]
+	private long[] historyTicks = new long[HISTORY];
+	private int[] historyX = new int[0];
+	private int[] historyY = new int[0];
+	private long latestTick = -1;
+	private double renderTick = -1;
+
+	/**
+	 * Connects to a server and joins a room
+	 * @param host the name or address of the server
+	 * @param port the port of the server
+	 * @param room the room to join, 0 to play anyone waiting
+	 * @throws IOException if the server can't be reached
+	 */
+	public GameClient(String host, int port, int room) throws IOException {
+		this(SocketChannel.open(new InetSocketAddress(host, port)), room);
+	}
+
+	/**
+	 * Joins a room of the server at the other end of a connected socket
+	 * @param channel the socket, connected
+	 * @param room the room to join, 0 to play anyone waiting
+	 * @throws IOException if the socket fails
+	 */
+	public GameClient(SocketChannel channel, int room) throws IOException {
+		this.channel = channel;
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.configureBlocking(false);
+		int frame = NetProtocol.begin(out, NetProtocol.JOIN);
+		out.putInt(room);
+		NetProtocol.end(out, frame);
+		flush();
+	}
+
+	/**
+	 * Sends the input of the player for the next tick, moving the
+	 * tank of the player right away
+	 * @param bits the input bits (INPUT_UP, INPUT_FIRE, ...)
+	 * @return the sequence number of the input
+	 * @throws IOException if the connection is lost
+	 */
+	public int send(int bits) throws IOException {
+		sequence++;
+		pending[sequence & (PENDING - 1)] = bits;
+		if(out.remaining() >= NetProtocol.HEADER + 5) {
+			int frame = NetProtocol.begin(out, NetProtocol.INPUT);
+			out.putInt(sequence);
+			out.put((byte) bits);
+			NetProtocol.end(out, frame);
+		}
+		// else the server doesn't keep up, the input is lost like a state would be
+		flush();
+		if(world != null && player >= 0)
+			world.predict(player, bits);
+		return sequence;
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		channel.write(out);
+		out.compact();
+	}
+
+	/**
+	 * Reads everything the server sent, updating the world, and moves
+	 * the other tanks one tick further between the states received
+	 * @return true if a state or a new game was received
+	 * @throws IOException if the connection is lost or the server sent garbage
+	 */
+	public boolean poll() throws IOException {
+		boolean changed = false;
+		int read;
+		do {
+			read = channel.read(in);
+			if(read < 0)
+				throw new IOException("Disconnected from the server");
+			in.flip();
+			changed |= parse();
+			in.compact();
+		} while(read > 0);
+
+		if(world == null)
+			return changed;
+		if(received) {
+			received = false;
+			reconcile();
+		}
+		interpolate();
+		return changed;
+	}
+
+	// reads the whole frames received, leaving the last partial one
+	private boolean parse() throws IOException {
+		boolean changed = false;
+		while(in.remaining() >= NetProtocol.HEADER) {
+			int length = in.getInt(in.position());
+			if(length < 1 || length > NetProtocol.MAX_FRAME)
+				throw new IOException("Bad frame from the server");
+			if(in.remaining() < 4 + length) {
+				if(in.capacity() < 4 + length)
+					grow(4 + length); // the whole world, bigger than a state
+				break;
+			}
+			int end = in.position() + 4 + length;
+			in.getInt();
+			byte type = in.get();
+			switch(type) {
+				case NetProtocol.WELCOME:
+					player = in.getShort();
+					break;
+				case NetProtocol.START:
+					ByteBuffer save = in.slice();
+					save.limit(length - 1);
+					start(SaveFormat.read(save));
+					changed = true;
+					break;
+				case NetProtocol.STATE:
+					if(world != null) {
+						ackedSequence = in.getInt();
+						// only the latest one matters, the others are skipped
+						if(latest.capacity() < end - in.position())
+							latest = ByteBuffer.allocate(end - in.position());
+						latest.clear();
+						ByteBuffer body = in.duplicate();
+						body.limit(end);
+						latest.put(body);
+						latest.flip();
+						received = true;
+						states++;
+						changed = true;
+					}
+					break;
+				default:
+					break; // from a newer server, skipped
+			}
+			in.position(end);
+		}
+		return changed;
+	}
+
+	private void grow(int size) {
+		ByteBuffer bigger = ByteBuffer.allocate(size + IN_SIZE);
+		bigger.put(in);
+		in = bigger;
+		in.flip();
+	}
+
+	// a new game, nothing to guess or to draw in between yet
+	private void start(GameWorld w) {
+		world = w;
+		startSequence = sequence;
+		received = false;
+		int tanks = w.getTanks().length;
+		historyX = new int[HISTORY * tanks];
+		historyY = new int[HISTORY * tanks];
+		Arrays.fill(historyTicks, -1);
+		latestTick = -1;
+		renderTick = -1;
+	}
+
+	// PREDICTION
+	// goes back to the latest state and plays the inputs the server hasn't applied yet
+	private void reconcile() throws IOException {
+		Tank me = player >= 0 && player < world.getTanks().length ? world.getTanks()[player] : null;
+		int guessX = me != null ? me.getX() : 0;
+		int guessY = me != null ? me.getY() : 0;
+		NetProtocol.readState(latest, world);
+		latestTick = world.getTick();
+		Tank[] tanks = world.getTanks();
+		int slot = (int) (latestTick & (HISTORY - 1)) * tanks.length;
+		historyTicks[(int) (latestTick & (HISTORY - 1))] = latestTick;
+		for(int i = 0; i < tanks.length; i++) {
+			historyX[slot + i] = tanks[i].getX();
+			historyY[slot + i] = tanks[i].getY();
+		}
+		if(player < 0 || player >= tanks.length)
+			return;
+		int from = ackedSequence - startSequence > 0 ? ackedSequence : startSequence;
+		if(sequence - from > PENDING)
+			from = sequence - PENDING; // too far behind, the oldest inputs are forgotten
+		for(int s = from + 1; s - sequence <= 0; s++) {
+			world.predict(player, pending[s & (PENDING - 1)]);
+		}
+		if(me != null && (tanks[player].getX() != guessX || tanks[player].getY() != guessY))
+			corrections++;
+	}
+
+	// INTERPOLATION
+	// puts the other tanks where they were a little in the past, between two states
+	private void interpolate() {
+		if(latestTick < 0)
+			return;
+		double target = latestTick - INTERPOLATION_DELAY;
+		if(renderTick < 0 || Math.abs(target - renderTick) > HISTORY / 2)
+			renderTick = target;
+		else
+			// a tick per tick, slowly catching up with the states when they come unevenly
+			renderTick += 1 + (target - renderTick) * 0.1;
+		renderTick = Math.max(Math.min(renderTick, latestTick), latestTick - HISTORY + 1);
+
+		// the states just before and just after the time drawn
+		long before = -1;
+		long after = -1;
+		for(int i = 0; i < HISTORY; i++) {
+			long t = historyTicks[i];
+			if(t < 0 || t > latestTick || latestTick - t >= HISTORY)
+				continue; // not received yet
+			if(t <= renderTick && t > before)
+				before = t;
+			if(t >= renderTick && (after < 0 || t < after))
+				after = t;
+		}
+		if(before < 0)
+			before = after;
+		if(after < 0)
+			after = before;
+		double f = after == before ? 0 : (renderTick - before) / (after - before);
+
+		Tank[] tanks = world.getTanks();
+		int b = (int) (before & (HISTORY - 1)) * tanks.length;
+		int a = (int) (after & (HISTORY - 1)) * tanks.length;
+		for(int i = 0; i < tanks.length; i++) {
+			if(i == player)
+				continue;
+			tanks[i].setX((int) Math.round(historyX[b + i] + (historyX[a + i] - historyX[b + i]) * f));
+			tanks[i].setY((int) Math.round(historyY[b + i] + (historyY[a + i] - historyY[b + i]) * f));
+		}
+	}
+
+	/**
+	 * Closes the connection
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the world to draw: the tank of the player where it is guessed
+	 * to be, the other tanks a little in the past
+	 * @return the world, null before the match starts */
+	public GameWorld getWorld() { return world; }
+	/**
+	 * Get the player given by the server
+	 * @return the player index, -1 before joining */
+	public int getPlayer() { return player; }
+	/**
+	 * Get the sequence of the latest input the server applied
+	 * @return the sequence number */
+	public int getAckedSequence() { return ackedSequence; }
+	/**
+	 * Get the sequence of the latest input sent
+	 * @return the sequence number */
+	public int getSequence() { return sequence; }
+	/**
+	 * Get the number of states received
+	 * @return the number of states */
+	public long getStates() { return states; }
+	/**
+	 * Get the number of states that moved the tank of the player away
+	 * from where it was guessed to be
+	 * @return the number of corrections */
+	public long getCorrections() { return corrections; }
+	/**
+	 * Get the tick of the latest state received
+	 * @return the tick, -1 before the first state of a game */
+	public long getLatestTick() { return latestTick; }
+}
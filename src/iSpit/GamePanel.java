@@ -4,22 +4,28 @@ import javax.swing.*;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class that creates the game panel representing the content of
- * the frame. It creates the player instances, the map, and sets things 
- * up for playing. It is actually the game loop, checking constantly
- * for collision between objects and interaction with the users and
- * updating everything accordingly. 
+ * the frame. It creates the game world and sets things up for playing. 
+ * It runs the game loop, feeding the world with the interaction of the 
+ * users, ticking it and drawing it. The rules themselves live
+ * in the GameWorld.
+ * By default it is drawn the Swing way, with repaint(). Started with
+ * -Dispit.render=active it draws on a Canvas with a BufferStrategy 
+ * instead, right from the game loop.
  * Also has methods for saving and loading the current
- * state of the game.
+ * state of the game, and records or plays back replays.
+ * Started with -Dispit.connect=host:port it plays on a GameServer
+ * instead, only sending the keys and drawing what the server sends back.
+ * With -Dispit.threads=n the ticks of a big arena are split over n cores.
+ * With -Dispit.humans=1 the second tank is played by a bot, for solo play.
  * 
  * @author Dan-Eduard Petrescu
  *
@@ -32,16 +38,48 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	private static final long serialVersionUID = -7002490392787359847L;
 	// INSTANCE VARIABLES
 	private Thread thread;
-	private boolean running;
-	private boolean gameStart;
+	private volatile boolean running;
+	private volatile boolean gameStart;
 	
-	public static Tank tank1;
-	public static Tank tank2; 
-	public static ArrayList<Bullet> bullets;
-	
-	public static ArrayList<Brick> bricks;
+	private volatile GameWorld world;
+		// a new game asked for from the menu, started by the game loop
+	private volatile boolean newGameRequested;
+	private WallLayer walls;
+		// frames handed from the game loop to the drawing
+	private FrameExchange frames;
+		// key presses of each player, from the key listener to the game loop
+	private InputQueue input;
+		// -Dispit.players=n adds bots to the two players at the keyboard,
+		// -Dispit.humans=1 plays the second tank with a bot too, 0 all of them
+	private int[] inputs;
+	private final int humans = Math.max(0, Math.min(2, Integer.getInteger("ispit.humans", 2)));
+	private final BotController bots = new BotController();
+	private final SplittableRandom random = new SplittableRandom();
+		// -Dispit.record=file records the match, -Dispit.replay=file plays one back
+	private ReplayRecorder recorder;
+	private ReplayPlayer replay;
+	private static final int KEYFRAME_INTERVAL = 300;
+		// saves written by another thread, with an autosave every 10 seconds
+	private SavePipeline saves;
+	private static final int AUTOSAVE_INTERVAL = 300;
+		// the time spent in each phase, shown with F3
+	private Profiler profiler;
+		// -Dispit.threads=n splits the ticks over n cores
+	private ForkJoinPool pool;
+	private volatile boolean overlay;
+		// -Dispit.connect=host:port plays on a server, -Dispit.room=n in a given room
+	private GameClient client;
 
 	private int FPS = 30;
+		// the most steps simulated in a single frame when catching up
+	private static final int MAX_CATCH_UP = 5;
+	private volatile long overruns;
+	private long reportedOverruns;
+	
+		// active rendering, null when drawing the Swing way
+	private Canvas canvas;
+	private BufferStrategy strategy;
+	private volatile boolean redrawRequested;
 	
 	// CONSTRUCTOR
 	/**
@@ -56,25 +94,128 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 		super();
 		setBackground(Color.BLACK);
 		setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
-		addKeyListener(new MyKeyAdapter());
-		setFocusable(true);
-		requestFocus();
 		
-		// Constructing the tanks
-		if(tank1 == null) {
-			tank1 = new Tank(Players.PLAYER1);
-		}
-		if(tank2 == null) {
-			tank2 = new Tank(Players.PLAYER2);
+		if("active".equals(System.getProperty("ispit.render"))) {
+			// the canvas gets the keys, Swing doesn't paint it anymore
+			setLayout(new BorderLayout());
+			canvas = new Canvas() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public void paint(Graphics g) {
+					requestRedraw();
+				}
+			};
+			canvas.setBackground(Color.BLACK);
+			canvas.setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
+			canvas.addKeyListener(new MyKeyAdapter());
+			canvas.setFocusable(true);
+			add(canvas, BorderLayout.CENTER);
+			canvas.requestFocus();
+		} else {
+			addKeyListener(new MyKeyAdapter());
+			setFocusable(true);
+			requestFocus();
 		}
 		
-		// Constructing the bullets array
-		bullets = new ArrayList<Bullet>();
-		
-		// Constructing the bricks array
-		bricks = new ArrayList<Brick>();
+		// Constructing the world: tanks, bullets and bricks
+		world = createWorld();
+		walls = new WallLayer();
+		frames = new FrameExchange();
+		input = new InputQueue(2, 256);
+		profiler = new Profiler();
+		int threads = Integer.getInteger("ispit.threads", 1);
+		if(threads > 1)
+			pool = new ForkJoinPool(threads);
+		saves = new SavePipeline(new File(System.getProperty("user.dir"), "autosave.savedata"),
+				Integer.getInteger("ispit.autosave", AUTOSAVE_INTERVAL));
+		initClient();
+		if(client == null)
+			initReplay();
+		publishFrame();
+	}
+	
+	/**
+	 * Connects to the server given on the command line, the world
+	 * is then the one the server runs
+	 */
+	private void initClient() {
+		String address = System.getProperty("ispit.connect");
+		if(address == null)
+			return;
+		int colon = address.lastIndexOf(':');
+		String host = colon < 0 ? address : address.substring(0, colon);
+		int port = colon < 0 ? NetProtocol.DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+		try {
+			client = new GameClient(host, port, Integer.getInteger("ispit.room", 0));
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Creates the world on the map given on the command line with
+	 * -Dispit.map=file, or on the default map, for the number of
+	 * players given with -Dispit.players=n
+	 * @return the world, ready for a new game
+	 */
+	private GameWorld createWorld() {
+		TileMap map = null;
+		String path = System.getProperty("ispit.map");
+		if(path != null) {
+			try {
+				map = MapLoader.load(new File(path));
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+		if(map == null)
+			map = new TileMap(GameWorld.DEFAULT_MAP, 20, 20);
+		try {
+			return new GameWorld(map, Math.max(2, Integer.getInteger("ispit.players", 2)));
+		} catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return new GameWorld(map);
+		}
+	}
+	
+	/**
+	 * Opens the replay given on the command line, to play it back
+	 * or to record the match into it
+	 */
+	private void initReplay() {
+		String path = System.getProperty("ispit.replay");
+		if(path != null) {
+			try {
+				replay = new ReplayPlayer(new File(path));
+				world = replay.getWorld();
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+			}
+			return;
+		}
 		
-		addBricks();
+		path = System.getProperty("ispit.record");
+		if(path == null)
+			return;
+		final ReplayRecorder r;
+		try {
+			r = new ReplayRecorder(new File(path), world.getTanks().length, KEYFRAME_INTERVAL);
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		recorder = r;
+		// what is still in memory goes to the file when the game is closed
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					r.close();
+				} catch(IOException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		});
 	}
 	
 	@Override
@@ -90,10 +231,10 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	 * Method used when user decides he wants to start a new game
 	 */
 	public void newGame() {
-		tank1 = new Tank(Players.PLAYER1);
-		tank2 = new Tank(Players.PLAYER2);
-		bullets = new ArrayList<Bullet>();
-		running = true;
+		// the game loop builds the fresh world at the next tick,
+		// only it may decode the chunks of a streamed map
+		newGameRequested = true;
+		setRunning(true);
 	}
 	
 	/**
@@ -103,54 +244,27 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	 * 			contains the saved game info
 	 */
 	public void loadGame(File f) {
-		// clearing tank instances of the old info
-		tank1 = null;
-		tank2 = null;
-		
 		try {
-			ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(f));
-			 
-			// start getting the objects out in the order in which they were written
-			tank1 = (Tank) objectInputStream.readObject();
-			tank1.setImage(Players.PLAYER1); // Image is not Serializable
-			
-			tank2 = (Tank) objectInputStream.readObject(); 
-			tank2.setImage(Players.PLAYER2); // Image is not Serializable
-			
-			bullets.clear();
-			
-			objectInputStream.close();			
+			// the game loop picks the loaded world up at the next tick
+			world = SaveFormat.load(f);
+			requestRedraw();
 		} catch(IOException e) {
 			System.out.println(e.getMessage());
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
 		}
-		
 	}
 	
 	/**
-	 * Method used when the user decides he wants to save a game to a file
+	 * Method used when the user decides he wants to save a game to a file.
+	 * The game loop copies the world at the next tick and the file is
+	 * written by another thread, nobody waits for the disk.
 	 * @param f representing the path to the file that
 	 * 			will contain the saved game info
 	 */
 	public void saveGame(File f) {
-		try {
-			ObjectOutputStream objectOutputStream = new ObjectOutputStream(
-	                new FileOutputStream(f));
-			
-			objectOutputStream.writeObject(tank1);
-			
-			System.out.println(tank1.getX());
-			
-			objectOutputStream.writeObject(tank2);
-			
-			System.out.println(tank2.getX());
-
-			objectOutputStream.flush();
-			objectOutputStream.close();
-		} catch (IOException e) {
-			System.out.println(e.getMessage());
-		}	
+		saves.request(f);
+		// the game loop takes the copy even when paused
+		if(thread != null)
+			LockSupport.unpark(thread);
 	}
 	
 	@Override
@@ -159,75 +273,160 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	 */
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		Graphics2D g2d = (Graphics2D) g;
+		if(canvas == null)
+			render((Graphics2D) g);
+	}
+	
+	/**
+	 * Draws the whole game: score, tanks, bullets and walls.
+	 * The view follows the tanks on a map bigger than the panel.
+	 * @param g2d representing the graphics context
+	 */
+	private void render(Graphics2D g2d) {
+		long start = System.nanoTime();
+		// the latest frame published by the game loop
+		FrameState frame = frames.acquire();
+		if(frame.getMap() == null)
+			return;
+		int viewX = view(frame, frame.getMap().getWidth() * BRICK_WIDTH, PANEL_WIDTH, true);
+		int viewY = view(frame, frame.getMap().getHeight() * BRICK_HEIGHT, PANEL_HEIGHT, false);
 			
 		// game over
-		if(tank1.isDead() || tank2.isDead())
-			gameOver(g2d);
+		if(frame.isOver())
+			gameOver(g2d, frame);
 		
 		// draw score
-		drawScore(g2d);
+		drawScore(g2d, frame);
 		
 		// draw tanks
-		tank1.draw(g2d);
-		tank2.draw(g2d);
+		g2d.translate(-viewX, -viewY);
+		drawTanks(g2d, frame);
+		g2d.translate(viewX, viewY);
 		
 		//draw pause
-		if(!running && !tank1.isDead() && !tank2.isDead())
+		if(!running && !frame.isOver())
 			drawPause(g2d);
 		
-		// draw bullets
-		for(int i = 0; i < bullets.size(); i++) {
-			bullets.get(i).draw(g2d);
-		}	
+		// draw bullets and bricks, all the bricks at once
+		g2d.translate(-viewX, -viewY);
+		drawBullets(g2d, frame);
+		walls.draw(g2d, frame.getMap(), viewX, viewY, PANEL_WIDTH, PANEL_HEIGHT);
+		g2d.translate(viewX, viewY);
+		
+		profiler.render(System.nanoTime() - start);
 		
-		// draw bricks
-		for(Brick b : bricks) {
-			b.drawBrick(g2d);
+		// draw the frame times
+		if(overlay)
+			drawProfiler(g2d);
+	}
+	
+	/**
+	 * Finds where the view starts on one axis: centered between the
+	 * tanks still alive, without going outside the map
+	 * @param frame representing the frame being drawn
+	 * @param mapSize the size of the map on that axis, in pixels
+	 * @param viewSize the size of the view on that axis, in pixels
+	 * @param horizontal representing the axis
+	 * @return the left or the top of the view in pixels
+	 */
+	private int view(FrameState frame, int mapSize, int viewSize, boolean horizontal) {
+		if(mapSize <= viewSize)
+			return 0;
+		int sum = 0;
+		int alive = 0;
+		for(int i = 0; i < frame.getTankCount(); i++) {
+			if(!frame.isTankDead(i)) {
+				sum += horizontal ? frame.getTankX(i) : frame.getTankY(i);
+				alive++;
+			}
 		}
+		if(alive == 0)
+			return 0;
+		int center = sum / alive + (horizontal ? TANK_WIDTH : TANK_HEIGHT) / 2;
+		return Math.max(0, Math.min(center - viewSize / 2, mapSize - viewSize));
 	}
 	
 	@Override
 	/**
-	 * The run method the the game loop will be run within
+	 * The run method the the game loop will be run within.
+	 * The world is ticked with a fixed step of 1 / FPS seconds, paced
+	 * with System.nanoTime, catching up when a frame took too long and
+	 * reporting the frames that could not catch up.
+	 * While paused the thread is parked instead of spinning.
 	 */
 	public void run() {
 		
 		gameStart = true;
-		running = true;
+		setRunning(true);
 		
-		long startTime;
-		long frameTime;
+		// target time for one step to maintain 30 FPS
+		long step = 1000000000L / FPS;
+		long accumulator = 0;
+		long previousTime;
+		long currentTime;
 		long waitTime;
-		
-		// target time for one loop to maintain 30 FPS
-		long targetTime = 1000 / FPS;		
+		long reportTime;
 		
 		showInstructions();
 		
+		previousTime = System.nanoTime();
+		reportTime = previousTime;
+		
 		// GAME LOOP
 		while(gameStart) {
 			
-			// setting things up for 30 FPS
-			if(running) {
-
-				startTime = System.currentTimeMillis();
-				
-				gameUpdate();
-
-				
-				frameTime = System.currentTimeMillis() - startTime;
-				waitTime = targetTime - frameTime;
-				
-				try {
-					Thread.sleep(waitTime);
+			// parking while paused, the key listener will unpark us
+			if(!running) {
+				redraw();
+				while(!running && gameStart) {
+					LockSupport.park(this);
+					// a save asked for while paused
+					saves.tick(world);
+					// the window needs to be drawn again while paused
+					if(redrawRequested && !running)
+						redraw();
 				}
-				catch(Exception e) {
-					System.out.println("interrupted");
+				// the time spent paused doesn't count
+				previousTime = System.nanoTime();
+				accumulator = 0;
+				continue;
+			}
+			
+			currentTime = System.nanoTime();
+			accumulator += currentTime - previousTime;
+			previousTime = currentTime;
+			
+			// fixed steps, catching up if we are late
+			int steps = 0;
+			while(accumulator >= step && steps < MAX_CATCH_UP && running) {
+				// the input that happened up to the end of this step
+				gameUpdate(currentTime - accumulator + step);
+				saves.tick(world);
+				accumulator -= step;
+				steps++;
+			}
+			
+			// too late to catch up, dropping the time left behind
+			if(accumulator >= step) {
+				overruns++;
+				accumulator = 0;
+			}
+			
+			redraw();
+			
+			// reporting the overruns at most once a second
+			if(currentTime - reportTime >= 1000000000L) {
+				if(overruns > reportedOverruns) {
+					System.out.println("frame overruns: " + (overruns - reportedOverruns));
+					reportedOverruns = overruns;
 				}
-
-			} else {						
-				repaint();
+				reportTime = currentTime;
+			}
+			
+			// waiting for the next step, never a negative time
+			waitTime = step - accumulator - (System.nanoTime() - currentTime);
+			if(waitTime > 0) {
+				LockSupport.parkNanos(this, waitTime);
 			}
 		}
 		
@@ -235,296 +434,302 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	
 	// UPDATE GAME
 	/**
-	 * Gathers all the updates from the game objects, 
-	 * does the collision checking and updates the info, 
+	 * Ticks the world with the input of the users, 
 	 * getting things ready for the next redraw
+	 * @param until the System.nanoTime the step ends at, the keys 
+	 * 			pressed or released later wait for the next step
 	 */
-	private void gameUpdate() {
-		// update tanks
-		tank1.update();
-		tank2.update();
-	
-		// update bullets
-		for(int i = 0; i < bullets.size(); i++) {
-			boolean remove = bullets.get(i).update();
-			if(remove) {
-				bullets.remove(i);
-				i--;
-			}
+	private void gameUpdate(long until) {
+		int[] keys = input.poll(until);
+		if(newGameRequested) {
+			newGameRequested = false;
+			world = new GameWorld(world.getMap(), world.getTanks().length);
 		}
+		// the world may have been replaced since the last tick
+		world.setProfiler(profiler);
+		world.setPool(pool);
 		
-		checkForCollision();	
-		
-		repaint();
-	}
-	
-	// CHECK FOR COLLISION
-	/**
-	 * Checks for collisions between game objects: Tanks, Bricks, Bullets
-	 */
-	public void checkForCollision() {
-		
-		// starting by setting all the tanks to not colliding
-		signalTankCollisions(false);
-		
-		// collision between bullets and tanks
-		for(int i = 0; i < bullets.size(); i++) {
-			Rectangle rb = new Rectangle(bullets.get(i).getX(), bullets.get(i).getY(),
-				BULLET_WIDTH, BULLET_HEIGHT);
-			Rectangle tb1 = new Rectangle(tank1.getX(), tank1.getY(), 
-					TANK_WIDTH, TANK_HEIGHT);
-			Rectangle tb2 = new Rectangle(tank2.getX(), tank2.getY(), 
-					TANK_WIDTH, TANK_HEIGHT);
-			if(rb.intersects(tb1)) {
-				tank1.hit();
-				bullets.remove(i);
-				i--;
-			}
-			if(rb.intersects(tb2)) {
-				tank2.hit();
-				bullets.remove(i);
-				i--;
+		if(client != null) {
+			// either set of keys plays the tank the server gave us
+			try {
+				client.send(keys[0] | keys[1]);
+				if(client.poll() && client.getWorld() != null)
+					world = client.getWorld();
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+				client.close();
+				client = null;
+				setRunning(false);
 			}
+			// the server starts the next match by itself
+			return;
 		}
 		
-		// collision between bullets and bricks
-		for(int i = 0; i < bullets.size(); i++) {
-			Rectangle rb = new Rectangle(bullets.get(i).getX(), bullets.get(i).getY(),
-				BULLET_WIDTH, BULLET_HEIGHT);
-			for(Brick b : bricks) {
-				Rectangle br = new Rectangle(b.getX(), b.getY(), BRICK_WIDTH, BRICK_HEIGHT);
-				if(rb.intersects(br)) {
-					bullets.remove(i);
-				}
+		if(replay != null) {
+			// the recorded input instead of the keys
+			try {
+				if(!replay.step())
+					setRunning(false);
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+				setRunning(false);
 			}
-			
-		}
-		// collision between tanks
-		Rectangle t1 = new Rectangle(tank1.getX(), tank1.getY(), 
-				TANK_WIDTH, TANK_HEIGHT);
-		Rectangle t2 = new Rectangle(tank2.getX(), tank2.getY(), 
-				TANK_WIDTH, TANK_HEIGHT);
-
-	
-		if(tank1.getRight() && tank1.getDown() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() - TANK_WIDTH / 5);
-			tank1.setY(tank1.getY() - TANK_WIDTH / 5);
-			tank1.setTankCollisionRight(true);
-			tank1.setTankCollisionDown(true);
-		}
-		else if(tank1.getRight() && tank1.getUp() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() - TANK_WIDTH / 5);
-			tank1.setY(tank1.getY() + TANK_WIDTH / 5);
-			tank1.setTankCollisionRight(true);
-			tank1.setTankCollisionUp(true);
+			world = replay.getWorld();
+			world.setProfiler(profiler);
+			world.setPool(pool);
+			return;
 		}
-		else if(tank1.getLeft() && tank1.getDown() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() + TANK_WIDTH / 5);
-			tank1.setY(tank1.getY() - TANK_WIDTH / 5);
-			tank1.setTankCollisionLeft(true);
-			tank1.setTankCollisionDown(true);
-		}
-		else if(tank1.getLeft() && tank1.getUp() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() + TANK_WIDTH / 5);
-			tank1.setY(tank1.getY() + TANK_WIDTH / 5);
-			tank1.setTankCollisionLeft(true);
-			tank1.setTankCollisionUp(true);
-		}
-		else if(tank1.getRight() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() - TANK_WIDTH / 5);
-			tank1.setTankCollisionRight(true);
-		}
-		else if(tank1.getLeft() && t1.intersects(t2)) {
-			tank1.setX(tank1.getX() + TANK_WIDTH / 5);
-			tank1.setTankCollisionLeft(true);
-		}
-		else if(tank1.getDown() && t1.intersects(t2)) {
-			tank1.setY(tank1.getY() - TANK_WIDTH / 5);
-			tank1.setTankCollisionDown(true);
-		}
-		else if(tank1.getUp() && t1.intersects(t2)) {
-			tank1.setY(tank1.getY() + TANK_WIDTH / 5);
-			tank1.setTankCollisionUp(true);
-		} 
 		
-		if(tank2.getRight() && tank2.getDown() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() - TANK_WIDTH / 5);
-			tank2.setY(tank2.getY() - TANK_WIDTH / 5);
-			tank2.setTankCollisionRight(true);
-			tank2.setTankCollisionDown(true);
-		}
-		else if(tank2.getRight() && tank2.getUp() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() - TANK_WIDTH / 5);
-			tank2.setY(tank2.getY() + TANK_WIDTH / 5);
-			tank2.setTankCollisionRight(true);
-			tank2.setTankCollisionUp(true);
-		}
-		else if(tank2.getLeft() && tank2.getDown() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() + TANK_WIDTH / 5);
-			tank2.setY(tank2.getY() - TANK_WIDTH / 5);
-			tank2.setTankCollisionLeft(true);
-			tank2.setTankCollisionDown(true);
+		int[] inputs = playerInputs(keys);
+		if(recorder != null) {
+			try {
+				recorder.record(world, inputs);
+			} catch(IOException e) {
+				// the match goes on without the recording
+				System.out.println(e.getMessage());
+				recorder = null;
+			}
 		}
-		else if(tank2.getLeft() && tank2.getUp() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() + TANK_WIDTH / 5);
-			tank2.setY(tank2.getY() + TANK_WIDTH / 5);
-			tank2.setTankCollisionLeft(true);
-			tank2.setTankCollisionUp(true);
+		world.tick(inputs);
+		if(world.isOver())
+			setRunning(false);
+	}
+	
+	/**
+	 * Gets the input of every player: the keys of the players at the
+	 * keyboard, the bots playing the other tanks
+	 * @param keys representing the input bits of the two players
+	 * @return the input bits of all the players
+	 */
+	private int[] playerInputs(int[] keys) {
+		Tank[] tanks = world.getTanks();
+		if(tanks.length == keys.length && humans == keys.length)
+			return keys;
+		if(inputs == null || inputs.length != tanks.length)
+			inputs = new int[tanks.length];
+		if(humans == 1) {
+			// alone at the keyboard, either set of keys plays the first tank
+			inputs[0] = keys[0] | keys[1];
+		} else if(humans == 2) {
+			inputs[0] = keys[0];
+			inputs[1] = keys[1];
 		}
-		else if(tank2.getRight() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() - TANK_WIDTH / 5);
-			tank2.setTankCollisionRight(true);
+		bots.inputs(world, humans, random, inputs);
+		return inputs;
+	}
+	
+	/**
+	 * Copies the world into a frame and hands it to the drawing
+	 */
+	private void publishFrame() {
+		frames.back().capture(world);
+		frames.publish();
+	}
+	
+	/**
+	 * Pauses or resumes the game loop, waking it up if it was parked
+	 * @param b representing if the game is running or not
+	 */
+	private void setRunning(boolean b) {
+		running = b;
+		if(b && thread != null) {
+			LockSupport.unpark(thread);
 		}
-		else if(tank2.getLeft() && t1.intersects(t2)) {
-			tank2.setX(tank2.getX() + TANK_WIDTH / 5);
-			tank2.setTankCollisionLeft(true);
+	}
+	
+	// REDRAW
+	/**
+	 * Draws the current state of the game. Actively, right away, on the
+	 * canvas, or by asking Swing to repaint the panel.
+	 */
+	private void redraw() {
+		redrawRequested = false;
+		publishFrame();
+		if(canvas == null) {
+			repaint();
+			return;
 		}
-		else if(tank2.getDown() && t1.intersects(t2)) {
-			tank2.setY(tank2.getY() - TANK_WIDTH / 5);
-			tank2.setTankCollisionDown(true);
+		if(strategy == null) {
+			if(!canvas.isDisplayable())
+				return;
+			canvas.createBufferStrategy(3);
+			strategy = canvas.getBufferStrategy();
 		}
-		else if(tank2.getUp() && t1.intersects(t2)) {
-			tank2.setY(tank2.getY() + TANK_WIDTH / 5);
-			tank2.setTankCollisionUp(true);
-		} 
-		
-		// collision between tank and bricks
-		for(Brick b : bricks) {
-			Rectangle br = new Rectangle(b.getX(), b.getY(), BRICK_WIDTH, BRICK_HEIGHT);
-			if(tank1.getRight() && tank1.getDown() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() - TANK_WIDTH / 8);
-				tank1.setY(tank1.getY() - TANK_WIDTH / 8);
-				tank1.setTankCollisionRight(true);
-				tank1.setTankCollisionDown(true);
-			}
-			else if(tank1.getRight() && tank1.getUp() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() - TANK_WIDTH / 8);
-				tank1.setY(tank1.getY() + TANK_WIDTH / 8);
-				tank1.setTankCollisionRight(true);
-				tank1.setTankCollisionUp(true);
-			}
-			else if(tank1.getLeft() && tank1.getDown() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() + TANK_WIDTH / 8);
-				tank1.setY(tank1.getY() - TANK_WIDTH / 8);
-				tank1.setTankCollisionLeft(true);
-				tank1.setTankCollisionDown(true);
-			}
-			else if(tank1.getLeft() && tank1.getUp() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() + TANK_WIDTH / 8);
-				tank1.setY(tank1.getY() + TANK_WIDTH / 8);
-				tank1.setTankCollisionLeft(true);
-				tank1.setTankCollisionUp(true);
-			}
-			else if(tank1.getRight() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() - TANK_WIDTH / 4);
-				tank1.setTankCollisionRight(true);
-			}
-			else if(tank1.getLeft() && t1.intersects(br)) {
-				tank1.setX(tank1.getX() + TANK_WIDTH / 4);
-				tank1.setTankCollisionLeft(true);
-			}
-			else if(tank1.getDown() && t1.intersects(br)) {
-				tank1.setY(tank1.getY() - TANK_WIDTH / 4);
-				tank1.setTankCollisionDown(true);
-			}
-			else if(tank1.getUp() && t1.intersects(br)) {
-				tank1.setY(tank1.getY() + TANK_WIDTH / 4);
-				tank1.setTankCollisionUp(true);
-			} 
-			
-			if(tank2.getRight() && tank2.getDown() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() - TANK_WIDTH / 8);
-				tank2.setY(tank2.getY() - TANK_WIDTH / 8);
-				tank2.setTankCollisionRight(true);
-				tank2.setTankCollisionDown(true);
-			}
-			else if(tank2.getRight() && tank2.getUp() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() - TANK_WIDTH / 8);
-				tank2.setY(tank2.getY() + TANK_WIDTH / 8);
-				tank2.setTankCollisionRight(true);
-				tank2.setTankCollisionUp(true);
-			}
-			else if(tank2.getLeft() && tank2.getDown() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() + TANK_WIDTH / 8);
-				tank2.setY(tank2.getY() - TANK_WIDTH / 8);
-				tank2.setTankCollisionLeft(true);
-				tank2.setTankCollisionDown(true);
-			}
-			else if(tank2.getLeft() && tank2.getUp() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() + TANK_WIDTH / 8);
-				tank2.setY(tank2.getY() + TANK_WIDTH / 8);
-				tank2.setTankCollisionLeft(true);
-				tank2.setTankCollisionUp(true);
-			}
-			else if(tank2.getRight() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() - TANK_WIDTH / 4);
-				tank2.setTankCollisionRight(true);
-			}
-			else if(tank2.getLeft() && t2.intersects(br)) {
-				tank2.setX(tank2.getX() + TANK_WIDTH / 4);
-				tank2.setTankCollisionLeft(true);
-			}
-			else if(tank2.getDown() && t2.intersects(br)) {
-				tank2.setY(tank2.getY() - TANK_WIDTH / 4);
-				tank2.setTankCollisionDown(true);
-			}
-			else if(tank2.getUp() && t2.intersects(br)) {
-				tank2.setY(tank2.getY() + TANK_WIDTH / 4);
-				tank2.setTankCollisionUp(true);
-			} 
-		}		
-		
+		// drawing again as long as the buffers were lost on the way
+		do {
+			do {
+				Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+				try {
+					g.setColor(Color.BLACK);
+					g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+					render(g);
+				} finally {
+					g.dispose();
+				}
+			} while(strategy.contentsRestored());
+			strategy.show();
+		} while(strategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+	}
+	
+	/**
+	 * Asks the game loop for the game to be drawn again, 
+	 * with a new frame even when paused
+	 */
+	private void requestRedraw() {
+		redrawRequested = true;
+		if(thread != null)
+			LockSupport.unpark(thread);
 	}
 	
 	/**
-	 * Signals the tank object that is colliding something and 
-	 * where that collision getting the tank to stop going
-	 * in that direction
-	 * @param b signaling to check all colliding or not
+	 * Get the number of frames that were too late to catch up
+	 * with the fixed step since the game loop started
+	 * @return the number of overruns
 	 */
-	private void signalTankCollisions(boolean b) { 
-		tank1.setTankCollisionUp(b);
-		tank1.setTankCollisionDown(b);
-		tank1.setTankCollisionLeft(b);
-		tank1.setTankCollisionRight(b);
-		tank2.setTankCollisionUp(b);
-		tank2.setTankCollisionDown(b);
-		tank2.setTankCollisionLeft(b);
-		tank2.setTankCollisionRight(b);
+	public long getOverruns() {
+		return overruns;
 	}
 	
 	// GAME OVER
 	/**
 	 * Method for drawing the game over state
 	 * @param g representing the graphics context
+	 * @param frame representing the frame being drawn
 	 */
-	public void gameOver(Graphics2D g) {
-		running = false;
+	public void gameOver(Graphics2D g, FrameState frame) {
 		g.setColor(Color.WHITE);
 		g.setFont(new Font("SANS_SERIF", Font.BOLD, 24));
 		g.drawString("GAME OVER", 250, 25);
 		g.setFont(new Font("SANS_SERIF", Font.BOLD, 14));
-		if(tank1.isDead()) {
-			g.setColor(Color.CYAN);
-			g.drawString("CYAN PLAYER WINS THE FIGHT!", 220, 75);
+		// the last tank alive, if any
+		int winner = -1;
+		for(int i = 0; i < frame.getTankCount(); i++) {
+			if(!frame.isTankDead(i))
+				winner = i;
 		}
-		if(tank2.isDead()) {
-			g.setColor(Color.RED);
-			g.drawString("RED PLAYER WINS THE FIGHT!", 220, 75);
+		if(winner < 0) {
+			g.drawString("NOBODY WINS THE FIGHT!", 220, 75);
+			return;
 		}
+		g.setColor(playerColor(frame.getTankPlayer(winner)));
+		g.drawString(playerName(frame.getTankPlayer(winner)) + " WINS THE FIGHT!", 220, 75);
+	}
+	
+	/**
+	 * Get the name of a player as shown on the screen
+	 * @param player representing the index of the player
+	 * @return the name
+	 */
+	private static String playerName(int player) {
+		switch(player) {
+			case 0: return "RED PLAYER";
+			case 1: return "CYAN PLAYER";
+			default: return "PLAYER " + (player + 1);
+		}
+	}
+	
+	/**
+	 * Get the color of a player, the color of its tank
+	 * @param player representing the index of the player
+	 * @return the color
+	 */
+	private static Color playerColor(int player) {
+		return Sprites.color(player);
 	}
 	
 	// DRAW SCORE
 	/**
-	 * Method for drawing the score
+	 * Method for drawing the score: the lives of the two players at the
+	 * keyboard and, with more players, the tanks still alive
 	 * @param g representing the graphics context
+	 * @param frame representing the frame being drawn
 	 */
-	public void drawScore(Graphics2D g) {
+	public void drawScore(Graphics2D g, FrameState frame) {
 		g.setFont(new Font("SANS_SERIF", Font.BOLD, 14));
 		g.setColor(Color.RED);
-		g.drawString("RED: " + tank1.getLives(), 10, 15);
+		g.drawString("RED: " + frame.getTankLives(0), 10, 15);
 		g.setColor(Color.CYAN);
-		g.drawString("CYAN: " + tank2.getLives(), 575, 15);
+		g.drawString("CYAN: " + frame.getTankLives(1), 575, 15);
+		if(frame.getTankCount() > 2) {
+			int alive = 0;
+			for(int i = 0; i < frame.getTankCount(); i++) {
+				if(!frame.isTankDead(i))
+					alive++;
+			}
+			g.setColor(Color.WHITE);
+			g.drawString("ALIVE: " + alive + " / " + frame.getTankCount(), 270, PANEL_HEIGHT - 8);
+		}
+	}
+	
+	// DRAW TANKS
+	/**
+	 * Method for drawing the tanks still alive, according to the
+	 * direction they are facing
+	 * @param g representing the graphics context
+	 * @param frame representing the frame being drawn
+	 */
+	public void drawTanks(Graphics2D g, FrameState frame) {
+		for(int i = 0; i < frame.getTankCount(); i++) {
+			if(!frame.isTankDead(i))
+				Sprites.draw(g, Sprites.tank(frame.getTankPlayer(i), frame.getTankDirection(i)),
+						frame.getTankX(i), frame.getTankY(i), TANK_WIDTH, TANK_HEIGHT);
+		}
+	}
+	
+	// DRAW BULLETS
+	/**
+	 * Method for drawing the bullets, standing up or lying down
+	 * according to the direction they are flying
+	 * @param g representing the graphics context
+	 * @param frame representing the frame being drawn
+	 */
+	public void drawBullets(Graphics2D g, FrameState frame) {
+		for(int i = 0; i < frame.getBulletCount(); i++) {
+			switch(frame.getBulletDirection(i)) {
+				case UP:
+				case DOWN:
+					Sprites.draw(g, Sprites.BULLET_V, frame.getBulletX(i), frame.getBulletY(i),
+							BULLET_HEIGHT, BULLET_WIDTH);
+					break;
+				case RIGHT:
+				case LEFT:
+					Sprites.draw(g, Sprites.BULLET_H, frame.getBulletX(i), frame.getBulletY(i),
+							BULLET_WIDTH, BULLET_HEIGHT);
+					break;
+			}
+		}
+	}
+	
+	// DRAW PROFILER
+	/**
+	 * Method for drawing the time spent in each phase, the median,
+	 * the 99th percentile and the longest, and the part of the frame
+	 * used by the latest tick and drawing
+	 * @param g representing the graphics context
+	 */
+	public void drawProfiler(Graphics2D g) {
+		long budget = 1000000000L / FPS;
+		g.setColor(new Color(0, 0, 0, 180));
+		g.fillRect(10, 25, 300, 20 + 15 * Profiler.PHASES.length + 20);
+		g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		g.setColor(Color.WHITE);
+		g.drawString("phase          p50      p99      max  ms", 15, 40);
+		for(int i = 0; i < Profiler.PHASES.length; i++) {
+			Histogram h = profiler.getHistogram(i);
+			g.drawString(String.format("%-10s %8.3f %8.3f %8.3f", Profiler.PHASES[i],
+					h.getPercentile(50) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6),
+					15, 55 + 15 * i);
+		}
+		// the frame budget, red when over
+		double used = profiler.getBudgetUsed(budget);
+		int y = 45 + 15 * Profiler.PHASES.length;
+		g.setColor(Color.DARK_GRAY);
+		g.fillRect(15, y, 200, 10);
+		g.setColor(used > 1 ? Color.RED : Color.GREEN);
+		g.fillRect(15, y, (int) (200 * Math.min(used, 1)), 10);
+		g.setColor(Color.WHITE);
+		g.drawString(String.format("%.1f%% of %.1f ms", used * 100, budget / 1e6), 220, y + 10);
 	}
 	
 	// DRAW PAUSE
@@ -559,7 +764,8 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 	// KEYLISTENER CLASS
 	/**
 	 * This class deals with the user interaction, signaling the
-	 * game what actions were generated by him.
+	 * game what actions were generated by him. The keys go through
+	 * the input queue, the game loop applies them at the next tick.
 	 * @author Dan-Eduard Petrescu
 	 *
 	 */
@@ -569,43 +775,50 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 			int key = e.getKeyCode();
 			switch(key) {
 				case KeyEvent.VK_UP:
-					tank1.setUp(true);
+					input.offer(System.nanoTime(), 0, INPUT_UP, true);
 					break;
 				case KeyEvent.VK_DOWN:
-					tank1.setDown(true);
+					input.offer(System.nanoTime(), 0, INPUT_DOWN, true);
 					break;
 				case KeyEvent.VK_LEFT:
-					tank1.setLeft(true);
+					input.offer(System.nanoTime(), 0, INPUT_LEFT, true);
 					break;
 				case KeyEvent.VK_RIGHT:
-					tank1.setRight(true);
+					input.offer(System.nanoTime(), 0, INPUT_RIGHT, true);
 					break;
 				case KeyEvent.VK_NUMPAD0:
-					tank1.setFiring(true);
+					input.offer(System.nanoTime(), 0, INPUT_FIRE, true);
 					break;
 					
 				case KeyEvent.VK_W:
-					tank2.setUp(true);
+					input.offer(System.nanoTime(), 1, INPUT_UP, true);
 					break;
 				case KeyEvent.VK_S:
-					tank2.setDown(true);
+					input.offer(System.nanoTime(), 1, INPUT_DOWN, true);
 					break;
 				case KeyEvent.VK_A:
-					tank2.setLeft(true);
+					input.offer(System.nanoTime(), 1, INPUT_LEFT, true);
 					break;
 				case KeyEvent.VK_D:
-					tank2.setRight(true);
+					input.offer(System.nanoTime(), 1, INPUT_RIGHT, true);
 					break;
 				case KeyEvent.VK_SPACE:
-					tank2.setFiring(true);
+					input.offer(System.nanoTime(), 1, INPUT_FIRE, true);
+					break;
+				case KeyEvent.VK_F3:
+					// counting again from when the overlay shows
+					if(!overlay)
+						profiler.reset();
+					overlay = !overlay;
+					requestRedraw();
 					break;
 				case KeyEvent.VK_P:
 					if (running) {
 						System.out.println(running);
-						running = false;
+						setRunning(false);
 					} else {
 						System.out.println(running);
-						running = true;
+						setRunning(true);
 					}
 			}
 		}
@@ -613,77 +826,40 @@ public class GamePanel extends JPanel implements Runnable, Commons {
 				int key = e.getKeyCode();
 				switch(key) {
 					case KeyEvent.VK_UP:
-						tank1.setUp(false);
+						input.offer(System.nanoTime(), 0, INPUT_UP, false);
 						break;
 					case KeyEvent.VK_DOWN:
-						tank1.setDown(false);
+						input.offer(System.nanoTime(), 0, INPUT_DOWN, false);
 						break;
 					case KeyEvent.VK_LEFT:
-						tank1.setLeft(false);
+						input.offer(System.nanoTime(), 0, INPUT_LEFT, false);
 						break;
 					case KeyEvent.VK_RIGHT:
-						tank1.setRight(false);
+						input.offer(System.nanoTime(), 0, INPUT_RIGHT, false);
 						break;
 					case KeyEvent.VK_NUMPAD0:
-						tank1.setFiring(false);
+						input.offer(System.nanoTime(), 0, INPUT_FIRE, false);
 						break;
 						
 					case KeyEvent.VK_W:
-						tank2.setUp(false);
+						input.offer(System.nanoTime(), 1, INPUT_UP, false);
 						break;
 					case KeyEvent.VK_S:
-						tank2.setDown(false);
+						input.offer(System.nanoTime(), 1, INPUT_DOWN, false);
 						break;
 					case KeyEvent.VK_A:
-						tank2.setLeft(false);
+						input.offer(System.nanoTime(), 1, INPUT_LEFT, false);
 						break;
 					case KeyEvent.VK_D:
-						tank2.setRight(false);
+						input.offer(System.nanoTime(), 1, INPUT_RIGHT, false);
 						break;
 					case KeyEvent.VK_SPACE:
-						tank2.setFiring(false);
+						input.offer(System.nanoTime(), 1, INPUT_FIRE, false);
 						break;
 				}			
 		}
 	}	
 	
-	// adds the bricks to the view corresponding to the map
-	/**
-	 * Method to add the bricks to the specified coordinates by the map
-	 */
-	void addBricks() {
-		for(int i = 0; i < coord.length; i++) {
-			if(coord[i] != 0) {
-				Brick x = new Brick(((i) % 20) * 32, ((i + 1) / 20) * 32);
-				bricks.add(x);
-			}
-		}
-	}
-	
-	// maps the view into numbers representing : 
-	//							0 for free space
-	//							1 for brick added
-	private int coord[] = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0,
-							0, 0, 0, 0, 1, 1, 1, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 1, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 0, 0, 0,
-							0, 0, 0, 1, 1, 1, 1, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
-							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0							
-						};
 }
 
 
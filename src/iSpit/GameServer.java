@@ -0,0 +1,472 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Program running the matches of many players over the network. The
+ * server owns every world, the clients only send their input and draw
+ * what the server sends back after each tick.
+ * <p>
+ * A single thread does everything: it accepts the players, reads their
+ * input from non-blocking sockets with a selector and ticks all the
+ * matches at the speed of the game. The state of a match is written once
+ * per tick and copied to the buffer of each of its players; a player too
+ * slow to keep up misses states rather than slowing the others down.
+ * <p>
+ * Usage: GameServer [port] [--map file] [--players n]
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class GameServer implements Commons {
+
+	// the ticks of the game, as in the GamePanel
+	private static final long TICK_NANOS = 1000000000L / 30;
+	// ticks between the end of a match and the next one
+	private static final int RESTART_TICKS = 90;
+	// ticks the server may fall behind before it stops catching up
+	private static final int MAX_LATE_TICKS = 5;
+	// the buffers of a player
+	private static final int IN_SIZE = 1024;
+	private static final int OUT_SIZE = 64 * 1024;
+	// inputs of a player waiting for their tick, a power of 2
+	private static final int INPUTS = 16;
+	// inputs of a player left waiting after a tick, the older ones are skipped
+	// so a burst after a stall doesn't keep the player behind for the whole match
+	private static final int BACKLOG = 2;
+
+	// INSTANCE VARIABLES
+	private final Selector selector;
+	private final ServerSocketChannel server;
+		// the walls every match starts on, a streamed map is reopened for each
+	private final TileMap map;
+	private final int players;
+	private final List<Match> matches = new ArrayList<>();
+	private final Map<Integer, Match> rooms = new HashMap<>();
+	// the state of a match, written once per tick for all its players
+	private ByteBuffer state = ByteBuffer.allocate(1024);
+	private volatile boolean running = true;
+	// STATISTICS, read from other threads
+	private volatile long ticks;
+	private volatile long dropped;
+	private volatile long tickNanos;
+
+	/**
+	 * Starts the server
+	 * @param args the port and the options
+	 */
+	public static void main(String[] args) {
+		int port = NetProtocol.DEFAULT_PORT;
+		File mapFile = null;
+		int players = 2;
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("--map") && i + 1 < args.length)
+				mapFile = new File(args[++i]);
+			else if(args[i].equals("--players") && i + 1 < args.length)
+				players = Integer.parseInt(args[++i]);
+			else
+				port = Integer.parseInt(args[i]);
+		}
+		try {
+			TileMap map = mapFile != null ? MapLoader.load(mapFile) : null;
+			GameServer server = new GameServer(new InetSocketAddress(port), map, players);
+			System.out.println("iSpit server on port " + server.getPort());
+			server.run();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a server for matches of two players
+	 * @param address the address to listen on, port 0 for any
+	 * @param map representing the map of the matches, null for the default one
+	 * @throws IOException if the address can't be listened on
+	 */
+	public GameServer(InetSocketAddress address, TileMap map) throws IOException {
+		this(address, map, 2);
+	}
+
+	/**
+	 * Creates a server listening on an address
+	 * @param address the address to listen on, port 0 for any
+	 * @param map representing the map of the matches, null for the default one
+	 * @param players the number of players of each match
+	 * @throws IOException if the address can't be listened on
+	 */
+	public GameServer(InetSocketAddress address, TileMap map, int players) throws IOException {
+		this.map = map != null ? map : new TileMap(GameWorld.DEFAULT_MAP, 20, 20);
+		this.players = players;
+		new GameWorld(this.map.reopen(), players); // failing now if the map is too small
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Runs the matches until stop() is called
+	 * @throws IOException if the selector fails
+	 */
+	public void run() throws IOException {
+		long next = System.nanoTime() + TICK_NANOS;
+		try {
+			while(running) {
+				long wait = next - System.nanoTime();
+				if(wait > 1000000)
+					selector.select(wait / 1000000);
+				else
+					selector.selectNow();
+				handle();
+
+				long now = System.nanoTime();
+				if(now - next > MAX_LATE_TICKS * TICK_NANOS)
+					next = now; // too far behind, dropping the ticks missed
+				while(now >= next) {
+					tick();
+					next += TICK_NANOS;
+				}
+			}
+		} finally {
+			for(SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		}
+	}
+
+	/**
+	 * Stops the server, from any thread
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	// SOCKETS
+	// accepts, reads and writes whatever is ready
+	private void handle() {
+		Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		while(keys.hasNext()) {
+			SelectionKey key = keys.next();
+			keys.remove();
+			try {
+				if(key.isAcceptable())
+					accept();
+				else {
+					Player player = (Player) key.attachment();
+					if(key.isReadable())
+						player.read();
+					if(key.isValid() && key.isWritable())
+						player.flush();
+				}
+			} catch(IOException e) {
+				if(key.attachment() != null)
+					disconnect((Player) key.attachment());
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Player player = new Player(channel);
+			player.key = channel.register(selector, SelectionKey.OP_READ, player);
+		}
+	}
+
+	// removes a player and ends the match, the other players wait for a new one
+	private void disconnect(Player player) {
+		player.key.cancel();
+		try {
+			player.channel.close();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+		Match match = player.match;
+		if(match == null)
+			return;
+		match.players[player.index] = null;
+		player.match = null;
+		if(!match.started) {
+			// still waiting for players, one more now
+			if(--match.joined == 0)
+				remove(match);
+			return;
+		}
+		remove(match);
+		for(Player other : match.players) {
+			if(other != null) {
+				other.match = null;
+				join(other, match.room);
+			}
+		}
+	}
+
+	private void remove(Match match) {
+		matches.remove(match);
+		if(rooms.get(match.room) == match)
+			rooms.remove(match.room);
+	}
+
+	// MATCHES
+	// puts a player in the match waiting in a room, starting it when full
+	private void join(Player player, int room) {
+		Match match = rooms.get(room);
+		if(match == null) {
+			// each match streams its own copy of the map
+			match = new Match(room, new GameWorld(map.reopen(), players));
+			matches.add(match);
+			rooms.put(room, match);
+		}
+		int index = 0;
+		while(match.players[index] != null) {
+			index++;
+		}
+		match.players[index] = player;
+		player.match = match;
+		player.index = index;
+		player.send(NetProtocol.WELCOME).putShort((short) index);
+		player.end();
+
+		if(++match.joined == players) {
+			rooms.remove(room); // full, the next players get a new match
+			match.start();
+		}
+	}
+
+	// ticks every match started and sends its state to its players
+	private void tick() {
+		long start = System.nanoTime();
+		for(int m = 0; m < matches.size(); m++) {
+			Match match = matches.get(m);
+			if(!match.started)
+				continue;
+			if(match.world.isOver()) {
+				if(++match.overTicks >= RESTART_TICKS) {
+					match.world = new GameWorld(match.world.getMap(), players);
+					match.start();
+				}
+				continue;
+			}
+			for(int p = 0; p < players; p++) {
+				match.inputs[p] = match.players[p].nextInput();
+			}
+			match.world.tick(match.inputs);
+			broadcast(match);
+		}
+		ticks++;
+		tickNanos = System.nanoTime() - start;
+	}
+
+	// writes the state once and copies it to each player after its ack
+	private void broadcast(Match match) {
+		int size = NetProtocol.maxStateSize(match.world);
+		if(state.capacity() < size)
+			state = ByteBuffer.allocate(size);
+		state.clear();
+		NetProtocol.writeState(match.world, state);
+		state.flip();
+		for(Player player : match.players) {
+			ByteBuffer out = player.out;
+			if(out.remaining() < NetProtocol.HEADER + 4 + state.remaining()) {
+				dropped++;
+				continue;
+			}
+			int frame = NetProtocol.begin(out, NetProtocol.STATE);
+			out.putInt(player.lastSequence);
+			out.put(state.duplicate());
+			NetProtocol.end(out, frame);
+			player.write();
+		}
+	}
+
+	// A MATCH
+	private class Match {
+		final int room;
+		final Player[] players = new Player[GameServer.this.players];
+		final int[] inputs = new int[GameServer.this.players];
+		int joined;
+		GameWorld world;
+		boolean started;
+		int overTicks;
+
+		Match(int room, GameWorld world) {
+			this.room = room;
+			this.world = world;
+		}
+
+		// sends the whole world to the players and starts ticking
+		void start() {
+			started = true;
+			overTicks = 0;
+			// every tile, the players may not have the map file
+			int size = SaveFormat.maxFullSize(world);
+			for(Player player : players) {
+				// the inputs sent for the previous game are lost
+				player.head = player.tail;
+				player.input = 0;
+				player.ensureCapacity(NetProtocol.HEADER + size);
+				int frame = NetProtocol.begin(player.out, NetProtocol.START);
+				SaveFormat.writeFull(world, player.out);
+				NetProtocol.end(player.out, frame);
+				player.write();
+			}
+		}
+	}
+
+	// A PLAYER
+	private class Player {
+		final SocketChannel channel;
+		SelectionKey key;
+		final ByteBuffer in = ByteBuffer.allocate(IN_SIZE);
+		// written to by the server, flushed to the socket, always ready to be written to
+		ByteBuffer out = ByteBuffer.allocate(OUT_SIZE);
+		Match match;
+		int index;
+		// the inputs received, one taken each tick
+		final int[] inputs = new int[INPUTS];
+		final int[] sequences = new int[INPUTS];
+		int head;
+		int tail;
+		// the input of the latest tick and its sequence, sent back with the state
+		int input;
+		int lastSequence;
+		int frame;
+
+		Player(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		// reads the messages received
+		void read() throws IOException {
+			if(channel.read(in) < 0)
+				throw new IOException("Disconnected");
+			in.flip();
+			while(in.remaining() >= NetProtocol.HEADER) {
+				int length = in.getInt(in.position());
+				if(length < 1 || length > IN_SIZE - 4)
+					throw new IOException("Bad frame");
+				if(in.remaining() < 4 + length)
+					break;
+				int end = in.position() + 4 + length;
+				in.getInt();
+				byte type = in.get();
+				switch(type) {
+					case NetProtocol.JOIN:
+						if(match == null)
+							join(this, in.getInt());
+						break;
+					case NetProtocol.INPUT:
+						if(tail - head == INPUTS)
+							head++; // too far ahead of the ticks, the oldest input is lost
+						sequences[tail & (INPUTS - 1)] = in.getInt();
+						inputs[tail & (INPUTS - 1)] = in.get();
+						tail++;
+						break;
+					default:
+						break; // from a newer client, skipped
+				}
+				in.position(end);
+			}
+			in.compact();
+		}
+
+		// the input for the next tick, the last one again when none came in time;
+		// a spit in the inputs skipped still happens
+		int nextInput() {
+			int fire = 0;
+			while(tail - head > BACKLOG + 1) {
+				fire |= inputs[head & (INPUTS - 1)] & INPUT_FIRE;
+				head++;
+			}
+			if(head != tail) {
+				input = inputs[head & (INPUTS - 1)] | fire;
+				lastSequence = sequences[head & (INPUTS - 1)];
+				head++;
+			}
+			return input;
+		}
+
+		// starts a message to this player
+		ByteBuffer send(byte type) {
+			ensureCapacity(NetProtocol.HEADER + 64);
+			frame = NetProtocol.begin(out, type);
+			return out;
+		}
+
+		// ends the message started by send()
+		void end() {
+			NetProtocol.end(out, frame);
+			write();
+		}
+
+		// grows the buffer for a message bigger than a state, like the whole world
+		void ensureCapacity(int size) {
+			if(out.remaining() >= size)
+				return;
+			ByteBuffer bigger = ByteBuffer.allocate(out.position() + size);
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+
+		// writes what the socket takes, waiting for the selector for the rest
+		void write() {
+			try {
+				flush();
+			} catch(IOException e) {
+				// the next read fails too, the player is removed then
+			}
+		}
+
+		void flush() throws IOException {
+			out.flip();
+			try {
+				channel.write(out);
+			} finally {
+				out.compact();
+			}
+			key.interestOps(out.position() > 0
+					? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the port the server listens on
+	 * @return the port number */
+	public int getPort() { return server.socket().getLocalPort(); }
+	/**
+	 * Get the number of matches, waiting or started
+	 * @return the number of matches */
+	public int getMatchCount() { return matches.size(); }
+	/**
+	 * Get the number of ticks run
+	 * @return the number of ticks */
+	public long getTicks() { return ticks; }
+	/**
+	 * Get the number of states not sent to players too slow to take them
+	 * @return the number of states */
+	public long getDropped() { return dropped; }
+	/**
+	 * Get the time the latest tick of all the matches took
+	 * @return the duration in nanoseconds */
+	public long getTickNanos() { return tickNanos; }
+}
@@ -0,0 +1,486 @@
+package iSpit;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Class holding the whole state of a match: the tanks, the bullets
+ * and the walls of the map. It knows nothing about Swing, so a match
+ * can be simulated headless, one tick at a time, as fast as the
+ * processor allows. The game panel only draws it and feeds it
+ * the user input.
+ * <p>
+ * Given a fork-join pool, the work of a tick where each tank or bullet
+ * only changes itself is split over the cores, the rest is done in the
+ * order of the tanks and the bullets, so a tick ends the same with or
+ * without the pool and the replays stay valid.
+ * 
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class GameWorld implements Commons {
+
+	/** The most bullets that can fly at the same time, up to 8 players */
+	public static final int MAX_BULLETS = 256;
+	/** The most bullets of each player flying at the same time, over 8 players */
+	public static final int BULLETS_PER_TANK = 32;
+	// the fewest tanks or bullets worth handing to another thread
+	private static final int GRAIN = 1024;
+
+	// INSTANCE VARIABLES
+		// the tanks, by player, and the columns holding them
+	private Tank[] tanks;
+	private TankStore store;
+	private BulletPool bullets;
+		// the tanks sorted by place, for the collision checks
+	private final SpatialGrid grid = new SpatialGrid();
+	
+	private TileMap map;
+	private long tick;
+	// the bullets fired and the ones that hit, by player
+	private int[] shots;
+	private int[] hits;
+		// times the phases of each tick, null for none
+	private Profiler profiler;
+		// splits the work of a tick over the cores, null for none
+	private ForkJoinPool pool;
+		// the tank each bullet hits, found for all the bullets at once
+	private int[] bulletHits;
+	
+	// THE WORK SPLIT OVER THE CORES
+	private final Partitions.Body moveTanks = new Partitions.Body() {
+		@Override
+		public void run(int from, int to) {
+			store.move(from, to, map.getWidth() * BRICK_WIDTH - TANK_WIDTH,
+					map.getHeight() * BRICK_HEIGHT - TANK_HEIGHT);
+		}
+	};
+	private final Partitions.Body moveBullets = new Partitions.Body() {
+		@Override
+		public void run(int from, int to) {
+			bullets.move(from, to);
+		}
+	};
+	private final Partitions.Body findHits = new Partitions.Body() {
+		@Override
+		public void run(int from, int to) {
+			for(int i = from; i < to; i++) {
+				bulletHits[i] = sweepTank(i);
+			}
+		}
+	};
+	private final Partitions.Body resolveWalls = new Partitions.Body() {
+		@Override
+		public void run(int from, int to) {
+			for(int i = from; i < to; i++) {
+				if(!store.isDead(i))
+					Collisions.resolveWalls(store, i, map);
+			}
+		}
+	};
+	
+	// CONSTRUCTORS
+	/**
+	 * Creates a world with the default map, ready for a new game
+	 */
+	public GameWorld() {
+		this(DEFAULT_MAP);
+	}
+	
+	/**
+	 * Creates a world with the specified map, ready for a new game
+	 * @param coord representing the map, 20 by 20 tiles, 
+	 * 			0 for free space and 1 for brick
+	 */
+	public GameWorld(int[] coord) {
+		this(new TileMap(coord, 20, 20));
+	}
+	
+	/**
+	 * Creates a world on the specified map, ready for a new game
+	 * @param map representing the walls
+	 */
+	public GameWorld(TileMap map) {
+		this(map, 2);
+	}
+	
+	/**
+	 * Creates a world on the specified map for any number of players,
+	 * ready for a new game
+	 * @param map representing the walls
+	 * @param players the number of players, each with a tank
+	 * @throws IllegalArgumentException if there are more players than a save
+	 * 			can hold or more than the map has room for
+	 */
+	public GameWorld(TileMap map, int players) {
+		// the saves, the replays and the network count the tanks on a short
+		if(players > Short.MAX_VALUE)
+			throw new IllegalArgumentException("At most " + Short.MAX_VALUE + " players, not " + players);
+		this.map = map;
+		tanks = new Tank[players];
+		// the saves count the bullets on a short
+		bullets = new BulletPool(Math.min(Math.max(MAX_BULLETS, players * BULLETS_PER_TANK), Short.MAX_VALUE));
+		bullets.setBounds(map.getWidth() * BRICK_WIDTH, map.getHeight() * BRICK_HEIGHT);
+		bulletHits = new int[bullets.capacity()];
+		reset();
+		// the walls around the tanks are there before the first tick
+		stream();
+	}
+	
+	/**
+	 * Puts the tanks back to their starting positions with full lives
+	 * and clears all the bullets
+	 */
+	public void reset() {
+		store = new TankStore(tanks.length);
+		if(tanks.length == 2 && isDefaultMap()) {
+			// the classic match, in the corners
+			adopt(0, new Tank(Players.PLAYER1));
+			adopt(1, new Tank(Players.PLAYER2));
+		} else {
+			spawn();
+		}
+		shots = new int[tanks.length];
+		hits = new int[tanks.length];
+		bullets.clear();
+		tick = 0;
+	}
+	
+	// spreads the tanks evenly over the free tiles, a tank per tile,
+	// each one facing the middle of the map; a streamed map only decodes
+	// the chunks the tanks start in
+	private void spawn() {
+		long free = map.countFree();
+		int n = tanks.length;
+		if(free < n)
+			throw new IllegalArgumentException("The map has room for " + free + " tanks, not " + n);
+		
+		// the middle of each share of the free tiles goes to a player,
+		// never past the last free tiles when there are barely enough
+		long[] ranks = new long[n];
+		for(int player = 0; player < n; player++) {
+			ranks[player] = Math.min(((player * 2L + 1) * free + n * 2L - 1) / (n * 2L), free - n + player);
+		}
+		int[] tx = new int[n];
+		int[] ty = new int[n];
+		map.findFree(ranks, tx, ty);
+		for(int player = 0; player < n; player++) {
+			Direction dir = ty[player] < map.getHeight() / 2 ? Direction.DOWN : Direction.UP;
+			tanks[player] = new Tank(store, store.add(player, tx[player] * BRICK_WIDTH, ty[player] * BRICK_HEIGHT, dir));
+		}
+	}
+	
+	// the corners of the classic match are only free on the default map
+	private boolean isDefaultMap() {
+		if(map.isStreamed() || map.getWidth() != 20 || map.getHeight() != 20)
+			return false;
+		for(int i = 0; i < DEFAULT_MAP.length; i++) {
+			if(map.isSolid(i % 20, i / 20) != (DEFAULT_MAP[i] != 0))
+				return false;
+		}
+		return true;
+	}
+	
+	// copies a tank into the store of the world
+	private void adopt(int player, Tank tank) {
+		tanks[player] = new Tank(store, store.add(tank.getStore(), tank.getRow()));
+	}
+	
+	// TICK
+	/**
+	 * Advances the simulation by one tick: applies the input of the players,
+	 * moves the tanks and the bullets and checks for collisions
+	 * @param inputs representing the input bits of each player
+	 * 			(INPUT_UP, INPUT_DOWN, ...), index 0 for player 1,
+	 * 			index 1 for player 2 and so on
+	 */
+	public void tick(int[] inputs) {
+		// timing the phases only when somebody looks at them
+		Profiler p = profiler;
+		long start = p != null ? System.nanoTime() : 0;
+		
+		stream();
+		
+		store.setInputs(inputs);
+		long input = p != null ? System.nanoTime() : 0;
+		
+		// update tanks, pushed out of the walls they drove into before firing
+		// so no bullet starts inside a brick, the bullets are fired in the
+		// order of the tanks
+		Partitions.run(pool, store.size(), GRAIN, moveTanks);
+		store.clearCollisions();
+		// a streamed map decodes its chunks when asked so only this thread may
+		Partitions.run(map.isStreamed() ? null : pool, store.size(), GRAIN, resolveWalls);
+		store.fire(this);
+		long tanksDone = p != null ? System.nanoTime() : 0;
+	
+		// update bullets, the ones leaving the map may hit something on the way out
+		Partitions.run(pool, bullets.size(), GRAIN, moveBullets);
+		long bulletsDone = p != null ? System.nanoTime() : 0;
+		
+		checkForCollision();
+		
+		if(p != null)
+			p.tick(tick, start, input, tanksDone, bulletsDone, System.nanoTime(), bullets.size());
+		tick++;
+	}
+	
+	/**
+	 * Guesses the next tick for one player only, before the server tells:
+	 * moves the tank of the player and its bullets, stopping them at the
+	 * walls. The other tanks don't move and nobody gets hit, the server
+	 * decides that.
+	 * @param player the index of the player
+	 * @param input the input bits of the player
+	 */
+	public void predict(int player, int input) {
+		if(store.isDead(player))
+			return;
+		store.setInput(player, input);
+		store.clearCollisions(player);
+		store.update(player, this);
+		for(int i = 0; i < bullets.size(); i++) {
+			if(bullets.getOwner(i) != player)
+				continue;
+			if(bullets.update(i) || sweepWall(i) >= 0) {
+				bullets.remove(i);
+				i--;
+			}
+		}
+	}
+	
+	/**
+	 * Fires a bullet for a player, counting it
+	 * @param x the bullet position in pixels on horizontal axis from left to right
+	 * @param y the bullet position in pixels on vertical axis from top to bottom
+	 * @param dir the direction the bullet is facing
+	 * @param player the index of the player firing
+	 */
+	public void fire(int x, int y, Direction dir, int player) {
+		if(bullets.spawn(x, y, dir, player) && player < shots.length)
+			shots[player]++;
+	}
+	
+	// keeps the part of a streamed map around the tanks and the view decoded
+	private void stream() {
+		int cx = 0;
+		int cy = 0;
+		int alive = 0;
+		for(int i = 0; i < store.size(); i++) {
+			if(!store.isDead(i)) {
+				map.focus(store.getX(i), store.getY(i));
+				cx += store.getX(i);
+				cy += store.getY(i);
+				alive++;
+			}
+		}
+		// the view is centered between the tanks
+		if(alive > 1)
+			map.focus(cx / alive, cy / alive);
+		map.release();
+	}
+	
+	// CHECK FOR COLLISION
+	/**
+	 * Checks for collisions between game objects: Bullets with Tanks and
+	 * Walls, then Tanks with each other. The tanks left the walls as they moved.
+	 */
+	public void checkForCollision() {
+		
+		// collision between bullets and tanks, only with the tanks close by,
+		// all the way from where each bullet was to where it is, so a fast
+		// bullet can't jump over a tank: the tank each bullet hits first is
+		// found for all of them at once, then the hits are counted in the
+		// order of the bullets
+		grid.build(store);
+		Partitions.run(pool, bullets.size(), GRAIN, findHits);
+		for(int i = 0; i < bullets.size(); i++) {
+			int hit = bulletHits[i];
+			// killed by an earlier bullet, maybe uncovering another tank
+			if(hit >= 0 && store.isDead(hit))
+				hit = sweepTank(i);
+			// a wall on the way stops the bullet before the tank
+			if(hit >= 0 && isShielded(i, hit))
+				hit = -1;
+			if(hit >= 0) {
+				store.hit(hit);
+				if(bullets.getOwner(i) < hits.length)
+					hits[bullets.getOwner(i)]++;
+				bullets.remove(i);
+				bulletHits[i] = bulletHits[bullets.size()];
+				i--;
+			}
+		}
+		
+		// collision between bullets and the walls on their way,
+		// and the bullets that left the map
+		for(int i = 0; i < bullets.size(); i++) {
+			if(sweepWall(i) >= 0 || bullets.isGone(i)) {
+				bullets.remove(i);
+				i--;
+			}
+		}
+		
+		// collision between tanks, never pushing one into a wall,
+		// sorted again without the tanks killed
+		grid.build(store);
+		grid.resolveTanks(tanks, map);
+	}
+	
+	// the first tank on the way of a bullet this tick, -1 if none
+	private int sweepTank(int i) {
+		int vx = bullets.getSpeedX(i);
+		int vy = bullets.getSpeedY(i);
+		return grid.sweepTank(bullets.getX(i) - vx, bullets.getY(i) - vy,
+				BULLET_WIDTH, BULLET_HEIGHT, vx, vy, bullets.getOwner(i));
+	}
+	
+	// the distance a bullet went this tick before meeting a wall, -1 if none
+	private int sweepWall(int i) {
+		int vx = bullets.getSpeedX(i);
+		int vy = bullets.getSpeedY(i);
+		return map.sweep(bullets.getX(i) - vx, bullets.getY(i) - vy, BULLET_WIDTH, BULLET_HEIGHT, vx, vy);
+	}
+	
+	// checks if a bullet met a wall before a tank, when both are on its way
+	private boolean isShielded(int i, int tank) {
+		int wall = sweepWall(i);
+		if(wall < 0)
+			return false;
+		int vx = bullets.getSpeedX(i);
+		int vy = bullets.getSpeedY(i);
+		return wall < Collisions.sweep(bullets.getX(i) - vx, bullets.getY(i) - vy, BULLET_WIDTH, BULLET_HEIGHT,
+				vx, vy, store.getX(tank), store.getY(tank), TANK_WIDTH, TANK_HEIGHT);
+	}
+	
+	// GETTERS
+	/** 
+	 * Get the tank of a player
+	 * @param player the index of the player, 0 for player 1
+	 * @return the tank controlled by the player */
+	public Tank getTank(int player) { return tanks[player]; }
+	/** 
+	 * Get all the tanks
+	 * @return the tanks, in player order */
+	public Tank[] getTanks() { return tanks; }
+	/** 
+	 * Get the columns holding the tanks
+	 * @return the store, indexed by player */
+	public TankStore getTankStore() { return store; }
+	/** 
+	 * Get the bullets currently flying
+	 * @return the pool of bullets */
+	public BulletPool getBullets() { return bullets; }
+	/** 
+	 * Get the walls of the map
+	 * @return the tile map */
+	public TileMap getMap() { return map; }
+	/** 
+	 * Get the number of ticks simulated since the game started
+	 * @return the current tick */
+	public long getTick() { return tick; }
+	/** 
+	 * Get if the game is over, meaning at most one tank is still alive
+	 * @return a boolean describing if the game is over or not */
+	public boolean isOver() { return getAlive() <= 1; }
+	/** 
+	 * Get the number of tanks still alive
+	 * @return the number of tanks */
+	public int getAlive() {
+		int alive = 0;
+		for(int i = 0; i < store.size(); i++) {
+			if(!store.isDead(i))
+				alive++;
+		}
+		return alive;
+	}
+	/** 
+	 * Get the player who won the game, the last one alive
+	 * @return the index of the player, -1 while more are alive or if nobody is */
+	public int getWinner() {
+		if(getAlive() != 1)
+			return -1;
+		for(int i = 0; i < tanks.length; i++) {
+			if(!tanks[i].isDead())
+				return i;
+		}
+		return -1;
+	}
+	/** 
+	 * Get the bullets a player fired since the game started
+	 * @param player the index of the player
+	 * @return the number of bullets fired */
+	public int getShots(int player) { return shots[player]; }
+	/** 
+	 * Get the bullets of a player that hit a tank since the game started
+	 * @param player the index of the player
+	 * @return the number of hits */
+	public int getHits(int player) { return hits[player]; }
+	
+	// SETTERS
+	/**
+	 * Replaces the tanks, used when loading a saved game. The tanks are
+	 * copied into the world, changing them afterwards changes nothing
+	 * @param tanks representing the tanks, in player order
+	 */
+	public void setTanks(Tank[] tanks) {
+		this.tanks = new Tank[tanks.length];
+		store = new TankStore(tanks.length);
+		for(int i = 0; i < tanks.length; i++) {
+			adopt(i, tanks[i]);
+		}
+		shots = new int[tanks.length];
+		hits = new int[tanks.length];
+	}
+	
+	/**
+	 * Sets the profiler timing the phases of each tick
+	 * @param profiler representing the profiler, null for none
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/**
+	 * Sets the pool the work of the big ticks is split over, the ticks
+	 * end the same with or without it
+	 * @param pool representing the pool, null to tick on the calling thread only
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * Sets the number of ticks simulated, used when loading a saved game
+	 * @param tick representing the tick
+	 */
+	public void setTick(long tick) {
+		this.tick = tick;
+	}
+	
+	// maps the view into numbers representing : 
+	//							0 for free space
+	//							1 for brick added
+	/** The map the game is played on when no other map is specified */
+	public static final int DEFAULT_MAP[] = { 
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0,
+							0, 0, 0, 0, 1, 1, 1, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 1, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 1, 0, 0, 0,
+							0, 0, 0, 1, 1, 1, 1, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+							0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0							
+						};
+}
@@ -0,0 +1,104 @@
+package iSpit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class counting durations in nanoseconds to tell their percentiles.
+ * Each power of 2 is split into 32 buckets, so a percentile is off by
+ * at most about 3%, whatever the duration. Recording is a single atomic
+ * increment, any thread may record or read without taking a lock.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class Histogram {
+
+	// buckets per power of 2, as a shift
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+	// the longest duration told apart, about 18 minutes
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	// INSTANCE VARIABLES
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Counts a duration
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		counts.incrementAndGet(index(value));
+		long m = max.get();
+		while(value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	// the bucket of a duration
+	private static int index(long value) {
+		if(value < SUB)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+		return (exponent - SUB_BITS + 1) * SUB + sub;
+	}
+
+	// the longest duration of a bucket
+	private static long highest(int index) {
+		if(index < SUB)
+			return index;
+		int exponent = index / SUB + SUB_BITS - 1;
+		long sub = index % SUB;
+		return ((SUB + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Get the duration that a part of the durations counted don't exceed
+	 * @param percentile from 0 to 100, 50 for the median
+	 * @return the duration in nanoseconds, 0 if nothing was counted
+	 */
+	public long getPercentile(double percentile) {
+		long total = getCount();
+		if(total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if(seen >= target)
+				return Math.min(highest(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Get the number of durations counted
+	 * @return the count */
+	public long getCount() {
+		long total = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Get the longest duration counted
+	 * @return the duration in nanoseconds */
+	public long getMax() { return max.get(); }
+
+	/**
+	 * Forgets everything counted. The durations counted by other threads
+	 * in the meantime may be kept or forgotten.
+	 */
+	public void reset() {
+		for(int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		max.set(0);
+	}
+}
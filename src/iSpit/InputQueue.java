@@ -0,0 +1,126 @@
+package iSpit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class carrying the key presses from the key listener to the game loop.
+ * Every press and release becomes a timestamped command in a ring buffer,
+ * and the game loop takes them out at the start of each tick, so the
+ * input never changes in the middle of a tick.
+ * A key pressed and released within the same tick still counts for
+ * that tick.
+ * When the queue is full the presses are dropped, never the releases:
+ * room is kept for the release of every key down, so no key stays held.
+ * Only one thread may offer and only one thread may poll, no locks
+ * are taken.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class InputQueue implements Commons {
+
+	// a command: the player in the high bits, the input bit in the low ones
+	private static final int PRESSED = 1 << 7;
+	private static final int BUTTONS = 0x7F;
+	private static final int PLAYER_SHIFT = 8;
+
+	// INSTANCE VARIABLES
+		// the ring buffer
+	private final long[] times;
+	private final int[] commands;
+	private final int mask;
+		// next slot to read, written by the game loop
+	private final AtomicLong head = new AtomicLong();
+		// next slot to write, written by the key listener
+	private final AtomicLong tail = new AtomicLong();
+		// owned by the key listener: the keys down after the commands
+		// added, and the slots kept for their releases
+	private final int[] down;
+	private final int reserved;
+		// owned by the game loop
+	private final int[] held;
+	private final int[] tapped;
+	private final int[] current;
+
+	/**
+	 * Creates an empty queue
+	 * @param players the number of players
+	 * @param capacity the most presses waiting, rounded up to a power of 2
+	 * 			with the releases of the keys down
+	 */
+	public InputQueue(int players, int capacity) {
+		reserved = players * Integer.bitCount(BUTTONS);
+		int size = Integer.highestOneBit(Math.max(capacity + reserved - 1, 1)) << 1;
+		times = new long[size];
+		commands = new int[size];
+		mask = size - 1;
+		down = new int[players];
+		held = new int[players];
+		tapped = new int[players];
+		current = new int[players];
+	}
+
+	/**
+	 * Adds a command, called by the key listener. When the queue is full
+	 * a press is dropped, a release always has room. A press of a key
+	 * already down or a release of a key not down changes nothing and
+	 * is skipped, like the repeats of a key held.
+	 * @param time the System.nanoTime the key was pressed or released at
+	 * @param player the index of the player
+	 * @param button the input bit (INPUT_UP, INPUT_DOWN, ...)
+	 * @param pressed representing if the key was pressed or released
+	 * @return a boolean describing if the command was taken into account or not
+	 */
+	public boolean offer(long time, int player, int button, boolean pressed) {
+		if(player < 0 || player >= down.length)
+			return false;
+		if(((down[player] & button) != 0) == pressed)
+			return true;
+		long t = tail.get();
+		// the slots left are kept for the releases of the keys down
+		if(pressed && t - head.get() > mask - reserved)
+			return false;
+		down[player] ^= button;
+		int i = (int) t & mask;
+		times[i] = time;
+		commands[i] = player << PLAYER_SHIFT | button | (pressed ? PRESSED : 0);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Takes out every command that happened up to a specified time and
+	 * gets the input of each player for the next tick, called by
+	 * the game loop once per tick
+	 * @param until the System.nanoTime the tick ends at
+	 * @return the input bits of each player, reused on every call
+	 */
+	public int[] poll(long until) {
+		long h = head.get();
+		long t = tail.get();
+		while(h < t) {
+			int i = (int) h & mask;
+			if(times[i] - until > 0)
+				break;
+			int command = commands[i];
+			int player = command >>> PLAYER_SHIFT;
+			int button = command & BUTTONS;
+			if(player < held.length) {
+				if((command & PRESSED) != 0) {
+					held[player] |= button;
+					tapped[player] |= button;
+				} else {
+					held[player] &= ~button;
+				}
+			}
+			h++;
+		}
+		head.lazySet(h);
+
+		for(int p = 0; p < current.length; p++) {
+			current[p] = held[p] | tapped[p];
+			tapped[p] = 0;
+		}
+		return current;
+	}
+}
@@ -0,0 +1,194 @@
+package iSpit;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Program standing between the game clients and a game server on the same
+ * machine, holding the bytes back as a slow network would: a delay each
+ * way, with some jitter. The bytes still arrive in order, like on TCP.
+ * Used to try the prediction of the clients without a real network.
+ * <p>
+ * Usage: LagProxy listenPort serverHost:serverPort delayMs [jitterMs]
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class LagProxy implements Runnable {
+
+	private static final int CHUNK = 16 * 1024;
+
+	// INSTANCE VARIABLES
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final InetSocketAddress target;
+	private final long delay;
+	private final long jitter;
+	private final Random random = new Random();
+	private volatile boolean running = true;
+
+	/**
+	 * Starts the proxy
+	 * @param args the ports, the delay and the jitter
+	 */
+	public static void main(String[] args) {
+		if(args.length < 3) {
+			System.out.println("Usage: LagProxy listenPort serverHost:serverPort delayMs [jitterMs]");
+			return;
+		}
+		String address = args[1];
+		int colon = address.lastIndexOf(':');
+		try {
+			LagProxy proxy = new LagProxy(new InetSocketAddress(Integer.parseInt(args[0])),
+					new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))),
+					Integer.parseInt(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 0);
+			proxy.run();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a proxy
+	 * @param address the address the clients connect to, port 0 for any
+	 * @param target the address of the server
+	 * @param delayMillis the milliseconds the bytes are held back each way
+	 * @param jitterMillis the most milliseconds added at random to the delay
+	 * @throws IOException if the address can't be listened on
+	 */
+	public LagProxy(InetSocketAddress address, InetSocketAddress target,
+			int delayMillis, int jitterMillis) throws IOException {
+		this.target = target;
+		delay = delayMillis * 1000000L;
+		jitter = jitterMillis * 1000000L;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Passes the bytes along until stop() is called
+	 */
+	@Override
+	public void run() {
+		try {
+			while(running) {
+				selector.select(1);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if(key.isAcceptable())
+							accept();
+						else if(key.isReadable())
+							((Pipe) key.attachment()).read();
+					} catch(IOException e) {
+						((Pipe) key.attachment()).close();
+					}
+				}
+				// the bytes whose time has come
+				long now = System.nanoTime();
+				for(SelectionKey key : selector.keys()) {
+					if(key.attachment() != null && key.isValid()) {
+						try {
+							((Pipe) key.attachment()).write(now);
+						} catch(IOException e) {
+							((Pipe) key.attachment()).close();
+						}
+					}
+				}
+			}
+			for(SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops the proxy, from any thread
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel client;
+		while((client = server.accept()) != null) {
+			SocketChannel upstream = SocketChannel.open(target);
+			client.configureBlocking(false);
+			upstream.configureBlocking(false);
+			Pipe up = new Pipe(client, upstream);
+			Pipe down = new Pipe(upstream, client);
+			client.register(selector, SelectionKey.OP_READ, up);
+			upstream.register(selector, SelectionKey.OP_READ, down);
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the port the clients connect to, useful when listening on port 0
+	 * @return the port number */
+	public int getPort() { return server.socket().getLocalPort(); }
+
+	// BYTES ONE WAY
+	private class Pipe {
+		final SocketChannel from;
+		final SocketChannel to;
+		// the bytes read and the time each chunk may go
+		final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+		final ArrayDeque<Long> times = new ArrayDeque<>();
+		long last;
+
+		Pipe(SocketChannel from, SocketChannel to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		void read() throws IOException {
+			ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+			if(from.read(chunk) < 0)
+				throw new IOException("Closed");
+			chunk.flip();
+			long time = System.nanoTime() + delay + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+			// never before the bytes read earlier
+			last = Math.max(last, time);
+			chunks.add(chunk);
+			times.add(last);
+		}
+
+		void write(long now) throws IOException {
+			while(!chunks.isEmpty() && times.peek() <= now) {
+				ByteBuffer chunk = chunks.peek();
+				to.write(chunk);
+				if(chunk.hasRemaining())
+					return; // the other end is full, trying again later
+				chunks.poll();
+				times.poll();
+			}
+		}
+
+		void close() {
+			try {
+				from.close();
+				to.close();
+			} catch(IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+}
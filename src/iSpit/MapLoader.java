@@ -0,0 +1,353 @@
+package iSpit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class reading and writing the map files, so new arenas need no
+ * recompiling. A map file starts with the magic number, the version and
+ * the size in tiles, followed by a directory with the offset of each
+ * chunk of 32 by 32 tiles, 0 for a chunk without walls. Each chunk is
+ * stored full, as runs of free and solid tiles, or as a bitset,
+ * whichever is the smallest.
+ * <p>
+ * Big files are memory-mapped and small ones read at once, either way
+ * the map only decodes the chunks it needs, when it needs them.
+ * Run as a program it converts a text map, '#' or '1' for brick,
+ * into a map file.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class MapLoader implements Commons {
+
+	/** The first 4 bytes of every map file, "iSPM" */
+	public static final int MAGIC = 0x6953504D;
+	/** The version written by this code */
+	public static final short VERSION = 1;
+
+	// CHUNK ENCODINGS
+	private static final byte CHUNK_FULL = 1;
+	private static final byte CHUNK_RUNS = 2;
+	private static final byte CHUNK_BITS = 3;
+
+	// bytes before the directory
+	private static final int HEADER = 16;
+	// files bigger than this are memory-mapped
+	private static final long MAP_THRESHOLD = 1 << 20;
+
+	private static final int CHUNK = TileMap.CHUNK;
+
+	// INSTANCE VARIABLES
+	private ByteBuffer data;
+	private File file;
+	private int width;
+	private int height;
+
+	private MapLoader(ByteBuffer data, File file) throws IOException {
+		this.data = data;
+		this.file = file;
+		try {
+			if(data.getInt(0) != MAGIC)
+				throw new IOException("Not an iSpit map");
+			if(data.getShort(6) != TileMap.CHUNK_SHIFT)
+				throw new IOException("Unsupported chunk size in the map");
+			width = data.getInt(8);
+			height = data.getInt(12);
+			long chunks = (long) ((width + CHUNK - 1) / CHUNK) * ((height + CHUNK - 1) / CHUNK);
+			if(width <= 0 || height <= 0 || HEADER + chunks * 4 > data.limit())
+				throw new IOException("Corrupted map");
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted map", e);
+		}
+	}
+
+	// LOAD
+	/**
+	 * Opens a map file. Nothing is decoded yet, the chunks are decoded
+	 * by the map when something gets near them.
+	 * @param f representing the map file
+	 * @return the map
+	 * @throws IOException if the file can't be read or is not a map
+	 */
+	public static TileMap load(File f) throws IOException {
+		ByteBuffer data;
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > MAP_THRESHOLD) {
+				// the mapping stays valid after the channel is closed
+				data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				data = ByteBuffer.allocate((int) size);
+				while(data.hasRemaining()) {
+					if(channel.read(data) < 0)
+						break;
+				}
+				data.flip();
+			}
+		}
+		MapLoader loader = new MapLoader(data, f);
+		return new TileMap(loader, loader.width, loader.height);
+	}
+
+	/**
+	 * Decodes a chunk, called by the map
+	 * @param i the chunk index, row after row
+	 * @return one int per row of the chunk, or null if it has no walls
+	 */
+	int[] decode(int i) {
+		int offset = data.getInt(HEADER + i * 4);
+		if(offset == 0)
+			return null;
+		int[] rows = new int[CHUNK];
+		int chunksX = (width + CHUNK - 1) / CHUNK;
+		// the tiles of the chunk that are inside the map
+		int w = Math.min(CHUNK, width - (i % chunksX) * CHUNK);
+		int h = Math.min(CHUNK, height - (i / chunksX) * CHUNK);
+		int full = w == CHUNK ? -1 : (1 << w) - 1;
+
+		switch(data.get(offset)) {
+			case CHUNK_FULL:
+				for(int row = 0; row < h; row++) {
+					rows[row] = full;
+				}
+				break;
+			case CHUNK_RUNS:
+				// runs over the tiles row after row, starting with free space
+				int runs = data.getShort(offset + 1) & 0xFFFF;
+				int tile = 0;
+				for(int r = 0; r < runs; r++) {
+					int length = data.getShort(offset + 3 + r * 2) & 0xFFFF;
+					if((r & 1) != 0) {
+						for(int t = tile; t < tile + length && t < CHUNK * CHUNK; t++) {
+							rows[t >> TileMap.CHUNK_SHIFT] |= 1 << (t & (CHUNK - 1));
+						}
+					}
+					tile += length;
+				}
+				break;
+			case CHUNK_BITS:
+				for(int row = 0; row < CHUNK; row++) {
+					rows[row] = data.getInt(offset + 1 + row * 4);
+				}
+				break;
+			default:
+				System.out.println("ERROR! Unknown chunk in the map");
+				return null;
+		}
+		// nothing outside the map, whatever the file says
+		for(int row = 0; row < CHUNK; row++) {
+			rows[row] = row < h ? rows[row] & full : 0;
+		}
+		return rows;
+	}
+
+	/**
+	 * Counts the free tiles of a chunk inside the map without decoding
+	 * it, called by the map
+	 * @param i the chunk index, row after row
+	 * @return the number of free tiles
+	 */
+	int countFree(int i) {
+		int chunksX = (width + CHUNK - 1) / CHUNK;
+		int w = Math.min(CHUNK, width - (i % chunksX) * CHUNK);
+		int h = Math.min(CHUNK, height - (i / chunksX) * CHUNK);
+		int offset = data.getInt(HEADER + i * 4);
+		if(offset == 0)
+			return w * h;
+		int solid = 0;
+		switch(data.get(offset)) {
+			case CHUNK_FULL:
+				return 0;
+			case CHUNK_RUNS:
+				int runs = data.getShort(offset + 1) & 0xFFFF;
+				int tile = 0;
+				for(int r = 0; r < runs; r++) {
+					int end = Math.min(tile + (data.getShort(offset + 3 + r * 2) & 0xFFFF), CHUNK * CHUNK);
+					// the solid tiles of the run inside the map, a row of the chunk at a time
+					while((r & 1) != 0 && tile < end) {
+						int row = tile >> TileMap.CHUNK_SHIFT;
+						int rowEnd = Math.min(end, (row + 1) * CHUNK);
+						if(row < h)
+							solid += Math.max(Math.min(rowEnd - row * CHUNK, w) - (tile - row * CHUNK), 0);
+						tile = rowEnd;
+					}
+					tile = Math.max(tile, end);
+				}
+				break;
+			case CHUNK_BITS:
+				int full = w == CHUNK ? -1 : (1 << w) - 1;
+				for(int row = 0; row < h; row++) {
+					solid += Integer.bitCount(data.getInt(offset + 1 + row * 4) & full);
+				}
+				break;
+			default:
+				break; // decoded as a chunk without walls
+		}
+		return w * h - solid;
+	}
+
+	/**
+	 * Get the file the map was opened from
+	 * @return the map file
+	 */
+	File getFile() {
+		return file;
+	}
+
+	// WRITE
+	/**
+	 * Writes a map to a file
+	 * @param map representing the map
+	 * @param f representing the file, replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(TileMap map, File f) throws IOException {
+		int chunksX = (map.getWidth() + CHUNK - 1) / CHUNK;
+		int chunksY = (map.getHeight() + CHUNK - 1) / CHUNK;
+		int count = chunksX * chunksY;
+		// the directory first, then one chunk at a time
+		ByteBuffer header = ByteBuffer.allocate(HEADER + count * 4);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.putShort((short) TileMap.CHUNK_SHIFT);
+		header.putInt(map.getWidth());
+		header.putInt(map.getHeight());
+		ByteBuffer chunk = ByteBuffer.allocate(3 + CHUNK * CHUNK * 2);
+		short[] runs = new short[CHUNK * CHUNK + 1];
+
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long offset = header.capacity();
+			channel.position(offset);
+			for(int cy = 0; cy < chunksY; cy++) {
+				for(int cx = 0; cx < chunksX; cx++) {
+					int w = Math.min(CHUNK, map.getWidth() - cx * CHUNK);
+					int h = Math.min(CHUNK, map.getHeight() - cy * CHUNK);
+					encode(map.getChunk(cx, cy), w, h, chunk, runs);
+					if(chunk.remaining() == 0) {
+						header.putInt(0);
+						continue;
+					}
+					if(offset > Integer.MAX_VALUE)
+						throw new IOException("Map too big");
+					header.putInt((int) offset);
+					offset += chunk.remaining();
+					while(chunk.hasRemaining()) {
+						channel.write(chunk);
+					}
+				}
+			}
+			header.flip();
+			channel.position(0);
+			while(header.hasRemaining()) {
+				channel.write(header);
+			}
+		}
+	}
+
+	// encodes a chunk in the smallest way, nothing for a chunk without walls
+	private static void encode(int[] rows, int w, int h, ByteBuffer b, short[] runs) {
+		b.clear();
+		int full = w == CHUNK ? -1 : (1 << w) - 1;
+		boolean empty = true;
+		boolean solid = true;
+		for(int row = 0; row < h; row++) {
+			empty &= (rows[row] & full) == 0;
+			solid &= (rows[row] & full) == full;
+		}
+		if(empty) {
+			b.flip();
+			return;
+		}
+		if(solid) {
+			b.put(CHUNK_FULL);
+			b.flip();
+			return;
+		}
+
+		// runs of free and solid tiles, row after row, starting with free
+		int count = 0;
+		int length = 0;
+		boolean current = false;
+		for(int t = 0; t < CHUNK * CHUNK; t++) {
+			boolean tile = (rows[t >> TileMap.CHUNK_SHIFT] & (1 << (t & (CHUNK - 1)))) != 0;
+			if(tile != current) {
+				runs[count++] = (short) length;
+				length = 0;
+				current = tile;
+			}
+			length++;
+		}
+		runs[count++] = (short) length;
+
+		if(2 + count * 2 < CHUNK * 4) {
+			b.put(CHUNK_RUNS);
+			b.putShort((short) count);
+			for(int r = 0; r < count; r++) {
+				b.putShort(runs[r]);
+			}
+		} else {
+			b.put(CHUNK_BITS);
+			for(int row = 0; row < CHUNK; row++) {
+				b.putInt(rows[row]);
+			}
+		}
+		b.flip();
+	}
+
+	// TEXT MAPS
+	/**
+	 * Reads a text map, a line per row of tiles, '#' or '1' for brick
+	 * and anything else for free space
+	 * @param f representing the text file
+	 * @return the map
+	 * @throws IOException if the file can't be read
+	 */
+	public static TileMap readText(File f) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		int width = 0;
+		try(BufferedReader in = new BufferedReader(new FileReader(f))) {
+			String line;
+			while((line = in.readLine()) != null) {
+				lines.add(line);
+				width = Math.max(width, line.length());
+			}
+		}
+		TileMap map = new TileMap(width, lines.size());
+		for(int ty = 0; ty < lines.size(); ty++) {
+			String line = lines.get(ty);
+			for(int tx = 0; tx < line.length(); tx++) {
+				char c = line.charAt(tx);
+				if(c == '#' || c == '1')
+					map.setSolid(tx, ty, true);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Converts a text map into a map file
+	 * @param args the text file and the map file
+	 */
+	public static void main(String[] args) {
+		if(args.length != 2) {
+			System.out.println("Usage: MapLoader <text map> <map file>");
+			return;
+		}
+		try {
+			TileMap map = readText(new File(args[0]));
+			write(map, new File(args[1]));
+			System.out.println(map.getWidth() + " x " + map.getHeight() + " tiles written to " + args[1]);
+		} catch(IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package iSpit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Class describing the messages between the game server and its clients.
+ * Every message is a frame: its length, its type and its content.
+ * The clients only send their input, the server runs the simulation and
+ * sends back the state of the match after every tick: the tanks and the
+ * bullets, a few bytes each. The whole world, map included, is only sent
+ * when a match starts, in the SaveFormat.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class NetProtocol implements Commons {
+
+	/** The port the server listens on by default */
+	public static final int DEFAULT_PORT = 7777;
+
+	// CLIENT TO SERVER
+	/** Joins a room: int room, 0 for any */
+	static final byte JOIN = 1;
+	/** The input of the player: int sequence, byte input bits */
+	static final byte INPUT = 2;
+
+	// SERVER TO CLIENT
+	/** The player of the client: short player index, as the bullet owners */
+	static final byte WELCOME = 10;
+	/** A new game: the whole world in the SaveFormat */
+	static final byte START = 11;
+	/** The state after a tick: int last input sequence applied, then the state */
+	static final byte STATE = 12;
+
+	/** Bytes before the content of a frame: length and type */
+	static final int HEADER = 5;
+	/** The biggest frame accepted */
+	static final int MAX_FRAME = 1 << 24;
+
+	// the directions by their ordinal, values() copies the array each call
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private NetProtocol() {}
+
+	/**
+	 * Starts a frame, the length is filled by end()
+	 * @param b the buffer to write to
+	 * @param type the message type
+	 * @return the position of the frame, for end()
+	 */
+	static int begin(ByteBuffer b, byte type) {
+		int start = b.position();
+		b.putInt(0);
+		b.put(type);
+		return start;
+	}
+
+	/**
+	 * Fills the length of a frame started by begin()
+	 * @param b the buffer written to
+	 * @param start the position returned by begin()
+	 */
+	static void end(ByteBuffer b, int start) {
+		b.putInt(start, b.position() - start - 4);
+	}
+
+	/**
+	 * Get the most bytes writeState() can take
+	 * @param world representing the world
+	 * @return the size in bytes
+	 */
+	static int maxStateSize(GameWorld world) {
+		return 8 + 2 + world.getTanks().length * 12 + 2 + world.getBullets().capacity() * 11;
+	}
+
+	/**
+	 * Writes the state of a world after a tick: where the tanks and the
+	 * bullets are, the lives, the firing timers and the tick
+	 * @param world representing the world
+	 * @param b the buffer to write to
+	 */
+	static void writeState(GameWorld world, ByteBuffer b) {
+		b.putLong(world.getTick());
+		Tank[] tanks = world.getTanks();
+		b.putShort((short) tanks.length);
+		for(int i = 0; i < tanks.length; i++) {
+			b.putInt(tanks[i].getX());
+			b.putInt(tanks[i].getY());
+			b.put((byte) tanks[i].getDirection().ordinal());
+			b.put((byte) tanks[i].getLives());
+			// for the client to guess when its tank fires
+			b.putShort((short) tanks[i].getFiringTimer());
+		}
+		BulletPool bullets = world.getBullets();
+		b.putShort((short) bullets.size());
+		for(int i = 0; i < bullets.size(); i++) {
+			b.putInt(bullets.getX(i));
+			b.putInt(bullets.getY(i));
+			b.put((byte) bullets.getDirection(i).ordinal());
+			b.putShort((short) bullets.getOwner(i));
+		}
+	}
+
+	/**
+	 * Reads a state written by writeState() into a world with the same tanks
+	 * @param b the buffer to read from
+	 * @param world representing the world to update
+	 * @throws IOException if the state doesn't fit the world
+	 */
+	static void readState(ByteBuffer b, GameWorld world) throws IOException {
+		try {
+			world.setTick(b.getLong());
+			Tank[] tanks = world.getTanks();
+			int count = b.getShort();
+			if(count != tanks.length)
+				throw new IOException("State for " + count + " tanks, the world has " + tanks.length);
+			for(int i = 0; i < count; i++) {
+				tanks[i].setX(b.getInt());
+				tanks[i].setY(b.getInt());
+				tanks[i].setDirection(DIRECTIONS[b.get()]);
+				tanks[i].setLives(b.get());
+				tanks[i].setFiringTimer(b.getShort());
+			}
+			BulletPool bullets = world.getBullets();
+			bullets.clear();
+			count = b.getShort();
+			for(int i = 0; i < count; i++) {
+				int x = b.getInt();
+				int y = b.getInt();
+				Direction dir = DIRECTIONS[b.get()];
+				bullets.spawn(x, y, dir, b.getShort());
+			}
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted state", e);
+		}
+	}
+}
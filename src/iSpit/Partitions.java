@@ -0,0 +1,68 @@
+package iSpit;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class splitting the work of a tick over the cores: a range of tanks or
+ * bullets is cut in halves on a fork-join pool until the parts are small
+ * enough, and each part is worked out by one thread.
+ * Only the work where each tank or bullet touches nothing but itself is
+ * split, so the result is the same whatever the parts and the threads.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+final class Partitions extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The work done on a part of a range
+	 */
+	interface Body {
+		/**
+		 * Works out a part
+		 * @param from the first index of the part
+		 * @param to the index after the last one
+		 */
+		void run(int from, int to);
+	}
+
+	// INSTANCE VARIABLES
+	private final Body body;
+	private final int from;
+	private final int to;
+	private final int grain;
+
+	private Partitions(Body body, int from, int to, int grain) {
+		this.body = body;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+	}
+
+	/**
+	 * Works out a range, on the pool if there is one and the range is worth it
+	 * @param pool representing the pool, null to work on the calling thread
+	 * @param count the number of indices, from 0
+	 * @param grain the fewest indices worth sending to another thread
+	 * @param body representing the work
+	 */
+	static void run(ForkJoinPool pool, int count, int grain, Body body) {
+		if(pool == null || count <= grain)
+			body.run(0, count);
+		else
+			pool.invoke(new Partitions(body, 0, count, grain));
+	}
+
+	@Override
+	protected void compute() {
+		if(to - from <= grain) {
+			body.run(from, to);
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		invokeAll(new Partitions(body, from, middle, grain), new Partitions(body, middle, to, grain));
+	}
+}
@@ -0,0 +1,115 @@
+package iSpit;
+
+/**
+ * Class timing each phase of the game: the input, the tanks, the bullets
+ * and the collisions of every tick, and the drawing of every frame.
+ * The durations go into histograms for the overlay, and each tick is
+ * also written as a Flight Recorder event when the running Java has one.
+ * Timing a phase costs a System.nanoTime call and allocates nothing.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class Profiler {
+
+	// PHASES
+	public static final int INPUT = 0;
+	public static final int TANKS = 1;
+	public static final int BULLETS = 2;
+	public static final int COLLISIONS = 3;
+	/** The whole tick, all the phases above */
+	public static final int TICK = 4;
+	public static final int RENDER = 5;
+	/** The names of the phases, by their number */
+	public static final String[] PHASES = { "input", "tanks", "bullets", "collisions", "tick", "render" };
+
+	// writes the Flight Recorder events, null when the running Java has none
+	private static final EventWriter EVENTS = createEventWriter();
+
+	// INSTANCE VARIABLES
+	private final Histogram[] histograms = new Histogram[PHASES.length];
+		// the latest durations, for the frame budget
+	private volatile long lastTick;
+	private volatile long lastRender;
+
+	/**
+	 * Creates a profiler with nothing counted
+	 */
+	public Profiler() {
+		for(int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Writes the event of a tick, implemented next to the event class
+	 * so nothing else needs the Flight Recorder to be there
+	 */
+	interface EventWriter {
+		void tick(long tick, long input, long tanks, long bullets, long collisions, int bulletCount);
+	}
+
+	// the Flight Recorder is there since 8u262, looked up by name once
+	private static EventWriter createEventWriter() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (EventWriter) Class.forName("iSpit.TickEvent$Writer").getDeclaredConstructor().newInstance();
+		} catch(ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Counts the phases of a tick, called by the world at its end
+	 * @param tick the tick number
+	 * @param start the System.nanoTime the tick started at
+	 * @param input the System.nanoTime the input was applied at
+	 * @param tanks the System.nanoTime the tanks were moved at
+	 * @param bullets the System.nanoTime the bullets were moved at
+	 * @param end the System.nanoTime the collisions were checked at
+	 * @param bulletCount the bullets flying after the tick
+	 */
+	public void tick(long tick, long start, long input, long tanks, long bullets, long end, int bulletCount) {
+		histograms[INPUT].record(input - start);
+		histograms[TANKS].record(tanks - input);
+		histograms[BULLETS].record(bullets - tanks);
+		histograms[COLLISIONS].record(end - bullets);
+		histograms[TICK].record(end - start);
+		lastTick = end - start;
+		if(EVENTS != null)
+			EVENTS.tick(tick, input - start, tanks - input, bullets - tanks, end - bullets, bulletCount);
+	}
+
+	/**
+	 * Counts the drawing of a frame
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void render(long nanos) {
+		histograms[RENDER].record(nanos);
+		lastRender = nanos;
+	}
+
+	/**
+	 * Get the part of a frame used by the latest tick and drawing
+	 * @param budget the nanoseconds of a frame
+	 * @return the part used, 1 for the whole frame
+	 */
+	public double getBudgetUsed(long budget) {
+		return (double) (lastTick + lastRender) / budget;
+	}
+
+	/**
+	 * Get the histogram of a phase
+	 * @param phase the phase number (INPUT, TANKS, ...)
+	 * @return the histogram */
+	public Histogram getHistogram(int phase) { return histograms[phase]; }
+
+	/**
+	 * Forgets everything counted
+	 */
+	public void reset() {
+		for(int i = 0; i < histograms.length; i++) {
+			histograms[i].reset();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Class playing back a match written by a ReplayRecorder.
+ * The file is memory-mapped and the keyframes are found once,
+ * so going to any frame only restores the nearest keyframe before it
+ * and simulates the few ticks left with the recorded input.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class ReplayPlayer {
+
+	// INSTANCE VARIABLES
+	private MappedByteBuffer data;
+	private int players;
+	private int interval;
+		// the frames with a keyframe and where their records start
+	private long[] keyframeFrames = new long[16];
+	private int[] keyframeOffsets = new int[16];
+	private int keyframeCount;
+	private long frameCount;
+		// where the playback is
+	private GameWorld world;
+	private long frame;
+	private int position;
+	private int[] inputs;
+
+	/**
+	 * Opens a replay and goes to its first frame
+	 * @param f representing the file written by a ReplayRecorder
+	 * @throws IOException if the file can't be read or is not a replay
+	 */
+	public ReplayPlayer(File f) throws IOException {
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if(data.getInt() != ReplayRecorder.MAGIC)
+				throw new IOException("Not an iSpit replay");
+			data.getShort(); // version
+			players = data.getShort();
+			interval = data.getInt();
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted replay", e);
+		}
+		inputs = new int[players];
+		index();
+		if(keyframeCount == 0)
+			throw new IOException("Replay has no keyframe");
+		seek(0);
+	}
+
+	// finds every keyframe, stopping at a record cut short by a crash
+	private void index() {
+		int p = data.position();
+		int limit = data.limit();
+		while(p < limit) {
+			byte tag = data.get(p);
+			if(tag == ReplayRecorder.RECORD_INPUT) {
+				if(p + 1 + players > limit)
+					break;
+				p += 1 + players;
+				frameCount++;
+			} else if(tag == ReplayRecorder.RECORD_KEYFRAME) {
+				if(p + 5 > limit || p + 5 + data.getInt(p + 1) > limit)
+					break;
+				if(keyframeCount == keyframeFrames.length) {
+					keyframeFrames = Arrays.copyOf(keyframeFrames, keyframeCount * 2);
+					keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+				}
+				keyframeFrames[keyframeCount] = frameCount;
+				keyframeOffsets[keyframeCount] = p;
+				keyframeCount++;
+				p += 5 + data.getInt(p + 1);
+			} else {
+				break;
+			}
+		}
+		data.limit(p);
+	}
+
+	/**
+	 * Goes to a frame: restores the nearest keyframe before it and
+	 * simulates forward from there
+	 * @param target representing the frame, clamped to the replay
+	 * @return the world as it was at the start of that frame
+	 * @throws IOException if a keyframe is corrupted
+	 */
+	public GameWorld seek(long target) throws IOException {
+		target = Math.max(0, Math.min(target, frameCount));
+		// the last keyframe at or before the target
+		int k = Arrays.binarySearch(keyframeFrames, 0, keyframeCount, target);
+		if(k < 0)
+			k = Math.max(-k - 2, 0);
+		// several keyframes at the same frame, the last one wins
+		while(k + 1 < keyframeCount && keyframeFrames[k + 1] == target)
+			k++;
+		frame = keyframeFrames[k];
+		position = keyframeOffsets[k];
+		readKeyframes();
+		while(frame < target) {
+			step();
+		}
+		return world;
+	}
+
+	/**
+	 * Simulates the next frame with the recorded input
+	 * @return a boolean describing if there was a frame left or not
+	 * @throws IOException if a keyframe is corrupted
+	 */
+	public boolean step() throws IOException {
+		if(position >= data.limit())
+			return false;
+		position++; // RECORD_INPUT
+		for(int p = 0; p < players; p++) {
+			inputs[p] = data.get(position++);
+		}
+		world.tick(inputs);
+		frame++;
+		// a new game or a loaded one starting at this frame
+		readKeyframes();
+		return true;
+	}
+
+	// restores the keyframes at the current position, a new game or a loaded one
+	private void readKeyframes() throws IOException {
+		while(position < data.limit() && data.get(position) == ReplayRecorder.RECORD_KEYFRAME) {
+			int length = data.getInt(position + 1);
+			ByteBuffer b = data.duplicate();
+			b.position(position + 5);
+			b.limit(position + 5 + length);
+			world = SaveFormat.read(b);
+			position += 5 + length;
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the world being played back, replaced on every keyframe
+	 * @return the world */
+	public GameWorld getWorld() { return world; }
+	/**
+	 * Get the current frame, the number of ticks played since the start
+	 * @return the frame */
+	public long getFrame() { return frame; }
+	/**
+	 * Get the number of frames recorded
+	 * @return the number of frames */
+	public long getFrameCount() { return frameCount; }
+	/**
+	 * Get the number of ticks between two keyframes
+	 * @return the keyframe interval */
+	public int getInterval() { return interval; }
+	/**
+	 * Get the input of the last frame played
+	 * @return the input bits of each player */
+	public int[] getInputs() { return inputs; }
+}
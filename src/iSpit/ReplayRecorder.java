@@ -0,0 +1,157 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class recording a match so it can be watched again. Every tick
+ * appends the input of each player, one byte per player, and every
+ * few ticks the whole world is appended as a keyframe, in the
+ * SaveFormat, so a ReplayPlayer can jump anywhere without simulating
+ * the match from the start.
+ * <p>
+ * The file starts with the magic number, the version, the number of
+ * players and the keyframe interval, followed by the records:
+ * INPUT (tag, one byte per player) and KEYFRAME (tag, length, world).
+ * The simulation is deterministic, so inputs and keyframes are enough
+ * to get back every frame.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class ReplayRecorder {
+
+	/** The first 4 bytes of every replay, "iSPR" */
+	public static final int MAGIC = 0x69535052;
+	/** The version written by this code */
+	public static final short VERSION = 1;
+
+	// RECORD TAGS
+	static final byte RECORD_INPUT = 1;
+	static final byte RECORD_KEYFRAME = 2;
+
+	// bytes kept in memory before writing to the file
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// INSTANCE VARIABLES
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private ByteBuffer keyframe;
+	private int players;
+	private int interval;
+		// ticks recorded so far
+	private long frame;
+		// to notice a new or loaded world, which needs a keyframe
+	private GameWorld lastWorld;
+	private long expectedTick;
+
+	/**
+	 * Creates a recorder writing to a file
+	 * @param f representing the file, replaced if it exists
+	 * @param players representing the number of players
+	 * @param interval representing the ticks between two keyframes
+	 * @throws IOException if the file can't be written
+	 */
+	public ReplayRecorder(File f, int players, int interval) throws IOException {
+		this.players = players;
+		this.interval = interval;
+		channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short) players);
+		buffer.putInt(interval);
+	}
+
+	/**
+	 * Records one tick, called right before the world is ticked
+	 * with the same input
+	 * @param world representing the world about to be ticked
+	 * @param inputs representing the input bits of each player
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void record(GameWorld world, int[] inputs) throws IOException {
+		if(channel == null)
+			return;
+
+		// a keyframe every interval, and whenever the world was replaced
+		if(frame % interval == 0 || world != lastWorld || world.getTick() != expectedTick) {
+			writeKeyframe(world);
+		}
+
+		ensure(1 + players);
+		buffer.put(RECORD_INPUT);
+		for(int p = 0; p < players; p++) {
+			buffer.put((byte) (p < inputs.length ? inputs[p] : 0));
+		}
+
+		lastWorld = world;
+		expectedTick = world.getTick() + 1;
+		frame++;
+	}
+
+	// appends the whole world, and writes what was recorded to the file
+	private void writeKeyframe(GameWorld world) throws IOException {
+		int size = SaveFormat.maxSize(world);
+		if(keyframe == null || keyframe.capacity() < size)
+			keyframe = ByteBuffer.allocate(size);
+		keyframe.clear();
+		SaveFormat.write(world, keyframe);
+		keyframe.flip();
+
+		flush();
+		ensure(5 + keyframe.remaining());
+		buffer.put(RECORD_KEYFRAME);
+		buffer.putInt(keyframe.remaining());
+		if(buffer.remaining() >= keyframe.remaining()) {
+			buffer.put(keyframe);
+		} else {
+			// bigger than the buffer, straight to the file
+			flush();
+			while(keyframe.hasRemaining()) {
+				channel.write(keyframe);
+			}
+		}
+	}
+
+	// makes room in the buffer
+	private void ensure(int bytes) throws IOException {
+		if(buffer.remaining() < bytes)
+			flush();
+	}
+
+	/**
+	 * Writes everything recorded so far to the file
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void flush() throws IOException {
+		if(channel == null)
+			return;
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes everything recorded so far and closes the file
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void close() throws IOException {
+		if(channel == null)
+			return;
+		flush();
+		channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Get the number of ticks recorded
+	 * @return the number of ticks */
+	public synchronized long getFrameCount() { return frame; }
+}
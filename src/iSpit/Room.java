@@ -0,0 +1,135 @@
+package iSpit;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Class holding one match hosted by a RoomManager: its world, the latest
+ * input of each player and what the match cost so far. The players past
+ * the ones given at the start are played by bots.
+ * The input may be set from any thread, the match is only ever ticked
+ * by one thread at a time, the one the room manager picks.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class Room implements Commons {
+
+	// ticks between the end of a match and the next one
+	private static final int RESTART_TICKS = 90;
+
+	/**
+	 * Told about each tick of a room, on the thread that ticked it
+	 */
+	public interface Listener {
+		void ticked(Room room);
+	}
+
+	// INSTANCE VARIABLES
+	private final int id;
+	private final TileMap map;
+	private final int players;
+	private final int humans;
+	private volatile GameWorld world;
+		// the input set by the players, copied at each tick
+	private final AtomicIntegerArray input;
+	private final int[] inputs;
+		// the bots
+	private final BotController bots = new BotController();
+	private final SplittableRandom random;
+	private volatile Listener listener;
+	private int overTicks;
+		// what the room cost
+	private volatile long ticks;
+	private volatile long nanos;
+	private volatile long games;
+
+	/**
+	 * Creates a room, called by the RoomManager
+	 * @param id the number of the room
+	 * @param map representing the walls, read only: an in-memory map may
+	 * 			be shared by many rooms, a streamed one may not, see TileMap.reopen()
+	 * @param players the number of tanks
+	 * @param humans the number of players setting their input, the others are bots
+	 * @param seed the seed of the bots
+	 */
+	Room(int id, TileMap map, int players, int humans, long seed) {
+		this.id = id;
+		this.map = map;
+		this.players = players;
+		this.humans = humans;
+		world = new GameWorld(map, players);
+		input = new AtomicIntegerArray(players);
+		inputs = new int[players];
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Ticks the match once, starting a new one a few seconds after
+	 * the end of the last one
+	 */
+	void tick() {
+		long start = System.nanoTime();
+		GameWorld w = world;
+		if(w.isOver()) {
+			if(++overTicks >= RESTART_TICKS) {
+				overTicks = 0;
+				bots.reset();
+				world = new GameWorld(map, players);
+				games++;
+			}
+		} else {
+			for(int p = 0; p < humans; p++) {
+				inputs[p] = input.get(p);
+			}
+			if(humans < players)
+				bots.inputs(w, humans, random, inputs);
+			w.tick(inputs);
+		}
+		Listener l = listener;
+		if(l != null)
+			l.ticked(this);
+		nanos += System.nanoTime() - start;
+		ticks++;
+	}
+
+	/**
+	 * Sets the input of a player for the next ticks, from any thread
+	 * @param player the index of the player
+	 * @param bits the input bits (INPUT_UP, INPUT_FIRE, ...)
+	 */
+	public void setInput(int player, int bits) {
+		input.set(player, bits);
+	}
+
+	/**
+	 * Sets who is told about each tick
+	 * @param listener representing the listener, null for none
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of the room
+	 * @return the id */
+	public int getId() { return id; }
+	/**
+	 * Get the world of the current match, only to be read from the
+	 * listener or once the room is closed
+	 * @return the world */
+	public GameWorld getWorld() { return world; }
+	/**
+	 * Get the number of ticks run
+	 * @return the number of ticks */
+	public long getTicks() { return ticks; }
+	/**
+	 * Get the time spent ticking the room
+	 * @return the duration in nanoseconds */
+	public long getNanos() { return nanos; }
+	/**
+	 * Get the number of matches finished
+	 * @return the number of matches */
+	public long getGames() { return games; }
+}
@@ -0,0 +1,242 @@
+package iSpit;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class hosting many matches in one process, each in its own room with
+ * its own world. Nothing is shared between the rooms but the threads.
+ * <p>
+ * The rooms hang on a timer wheel: the 1 / 30 s of a tick is split into
+ * SLOTS turns, each room belongs to one slot and a single timer thread
+ * hands the rooms of the next slot to a small pool of workers at every
+ * turn. So the ticks of thousands of rooms are spread over the whole
+ * tick instead of all waking up at once, and no room needs a thread of
+ * its own. When the rooms of a slot are still ticking at their next turn
+ * the turn is skipped and counted as late, a room is never ticked by two
+ * threads at the same time.
+ * <p>
+ * Usage: RoomManager rooms [--threads n] [--players n] [--seconds s]
+ * hosts bot matches and prints what a room costs.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class RoomManager {
+
+	// the ticks of the game, as in the GamePanel
+	private static final long TICK_NANOS = 1000000000L / 30;
+	/** The turns of the wheel in each tick */
+	public static final int SLOTS = 32;
+
+	// INSTANCE VARIABLES
+	private final ScheduledExecutorService timer;
+	private final ExecutorService workers;
+	private final Slot[] slots = new Slot[SLOTS];
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final LongAdder late = new LongAdder();
+	private int turn;
+
+	/**
+	 * Starts the wheel and the workers
+	 * @param threads the number of workers ticking the rooms
+	 */
+	public RoomManager(int threads) {
+		for(int i = 0; i < SLOTS; i++) {
+			slots[i] = new Slot();
+		}
+		timer = Executors.newSingleThreadScheduledExecutor(new Daemons("iSpit rooms timer"));
+		workers = Executors.newFixedThreadPool(threads, new Daemons("iSpit rooms"));
+		timer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				turn();
+			}
+		}, TICK_NANOS / SLOTS, TICK_NANOS / SLOTS, TimeUnit.NANOSECONDS);
+	}
+
+	// hands the rooms of the next slot to the workers
+	private void turn() {
+		Slot slot = slots[turn];
+		turn = (turn + 1) % SLOTS;
+		if(slot.rooms.length == 0)
+			return;
+		if(slot.busy.compareAndSet(false, true))
+			workers.execute(slot);
+		else
+			late.increment();
+	}
+
+	/**
+	 * Opens a room on an in-memory map shared with other rooms
+	 * @param map representing the walls, only read by the rooms
+	 * @param players the number of tanks
+	 * @param humans the number of players setting their input, the others are bots
+	 * @return the room, ticking from the next turn of its slot
+	 */
+	public Room open(TileMap map, int players, int humans) {
+		int id = nextId.incrementAndGet();
+		Room room = new Room(id, map, players, humans, id * 0x9E3779B97F4A7C15L);
+		// the slot with the fewest rooms
+		Slot best = slots[0];
+		for(Slot slot : slots) {
+			if(slot.rooms.length < best.rooms.length)
+				best = slot;
+		}
+		best.add(room);
+		return room;
+	}
+
+	/**
+	 * Closes a room, it may be ticking one last time
+	 * @param room representing the room
+	 */
+	public void close(Room room) {
+		for(Slot slot : slots) {
+			slot.remove(room);
+		}
+	}
+
+	/**
+	 * Stops the wheel and the workers, the rooms are not ticked anymore
+	 * @throws InterruptedException if interrupted while waiting for the last ticks
+	 */
+	public void shutdown() throws InterruptedException {
+		timer.shutdown();
+		timer.awaitTermination(1, TimeUnit.SECONDS);
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.SECONDS);
+	}
+
+	// A SLOT
+	// the rooms of a turn of the wheel, copied when one is added or removed
+	private static class Slot implements Runnable {
+		volatile Room[] rooms = new Room[0];
+		final AtomicBoolean busy = new AtomicBoolean();
+
+		synchronized void add(Room room) {
+			Room[] bigger = Arrays.copyOf(rooms, rooms.length + 1);
+			bigger[rooms.length] = room;
+			rooms = bigger;
+		}
+
+		synchronized void remove(Room room) {
+			for(int i = 0; i < rooms.length; i++) {
+				if(rooms[i] == room) {
+					Room[] smaller = Arrays.copyOf(rooms, rooms.length - 1);
+					System.arraycopy(rooms, i + 1, smaller, i, rooms.length - i - 1);
+					rooms = smaller;
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for(Room room : rooms) {
+					room.tick();
+				}
+			} finally {
+				busy.set(false);
+			}
+		}
+	}
+
+	// names the threads, which don't keep the process alive
+	private static class Daemons implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		Daemons(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name + " " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of rooms open
+	 * @return the number of rooms */
+	public int getRoomCount() {
+		int count = 0;
+		for(Slot slot : slots) {
+			count += slot.rooms.length;
+		}
+		return count;
+	}
+	/**
+	 * Get the turns skipped because the rooms of the slot were still ticking
+	 * @return the number of turns */
+	public long getLate() { return late.sum(); }
+
+	// HOSTING BOTS
+	/**
+	 * Hosts bot matches and prints the memory and the time each room takes
+	 * @param args the number of rooms and the options
+	 * @throws InterruptedException if interrupted while hosting
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int count = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int players = 2;
+		int seconds = 10;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--players": players = Integer.parseInt(args[++i]); break;
+				case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+				default: count = Integer.parseInt(args[i]); break;
+			}
+		}
+
+		TileMap map = new TileMap(GameWorld.DEFAULT_MAP, 20, 20);
+		long before = usedMemory();
+		RoomManager manager = new RoomManager(threads);
+		Room[] rooms = new Room[count];
+		for(int i = 0; i < count; i++) {
+			rooms[i] = manager.open(map, players, 0);
+		}
+		long after = usedMemory();
+		System.out.printf("%d rooms of %d players on %d threads, %d bytes per room%n",
+				count, players, threads, (after - before) / count);
+
+		long start = System.nanoTime();
+		for(int s = 1; s <= seconds; s++) {
+			Thread.sleep(1000);
+			long ticks = 0;
+			long nanos = 0;
+			for(Room room : rooms) {
+				ticks += room.getTicks();
+				nanos += room.getNanos();
+			}
+			double elapsed = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%.0f ticks/s per room, %.1f us per tick, %.3f%% of a processor per room,"
+					+ " %d late turns%n", ticks / elapsed / count, nanos / 1e3 / Math.max(ticks, 1),
+					100.0 * nanos / 1e9 / elapsed / count, manager.getLate());
+		}
+		manager.shutdown();
+	}
+
+	// the heap used once the garbage is gone, as far as the collector tells
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
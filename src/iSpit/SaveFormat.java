@@ -0,0 +1,246 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class writing and reading the whole state of a world in a compact
+ * binary form: the tanks, the bullets in flight, the map and the tick.
+ * <p>
+ * A save starts with the magic number and the format version, followed
+ * by sections made of a tag, a length and the content. A reader skips
+ * the sections it doesn't know, and the tanks and the bullets carry
+ * the size of their records, so the fields added later are skipped
+ * by older readers too.
+ * <p>
+ * The map of a streamed arena is saved as the name of its file and the
+ * chunks changed since it was opened, so the autosaves and the replay
+ * keyframes stay small; writeFull() saves every tile instead, for
+ * another machine which may not have the file.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class SaveFormat {
+
+	/** The first 4 bytes of every save, "iSPT" */
+	public static final int MAGIC = 0x69535054;
+	/** The version written by this code, 2 naming the file of a streamed map */
+	public static final short VERSION = 2;
+
+	// SECTION TAGS
+	private static final short SECTION_WORLD = 1;
+	private static final short SECTION_MAP = 2;
+	private static final short SECTION_TANKS = 3;
+	private static final short SECTION_BULLETS = 4;
+	private static final short SECTION_MAP_FILE = 5;
+
+	// bytes before the content of a section: tag and length
+	private static final int SECTION_HEADER = 6;
+
+	private SaveFormat() {}
+
+	/**
+	 * Get the most bytes that writing a world can take
+	 * @param world representing the world
+	 * @return the size in bytes
+	 */
+	public static int maxSize(GameWorld world) {
+		return maxSize(world, !world.getMap().isStreamed());
+	}
+
+	/**
+	 * Get the most bytes that writing a world with every tile can take
+	 * @param world representing the world
+	 * @return the size in bytes
+	 */
+	public static int maxFullSize(GameWorld world) {
+		return maxSize(world, true);
+	}
+
+	// the size with every tile or with the changed chunks only
+	private static int maxSize(GameWorld world, boolean full) {
+		TileMap map = world.getMap();
+		return 6
+				+ SECTION_HEADER + 8
+				+ SECTION_HEADER + (full ? map.savedSize() : map.savedChangesSize())
+				+ SECTION_HEADER + 4 + world.getTanks().length * Tank.RECORD_SIZE
+				+ SECTION_HEADER + 4 + world.getBullets().capacity() * BulletPool.RECORD_SIZE;
+	}
+
+	// WRITE
+	/**
+	 * Writes a world at the position of a buffer, creating nothing.
+	 * A streamed map is written as its file and the chunks changed.
+	 * @param world representing the world
+	 * @param b representing the buffer, with at least maxSize() bytes left
+	 */
+	public static void write(GameWorld world, ByteBuffer b) {
+		write(world, b, !world.getMap().isStreamed());
+	}
+
+	/**
+	 * Writes a world with every tile of its map, to be read where the
+	 * map file may be missing
+	 * @param world representing the world
+	 * @param b representing the buffer, with at least maxFullSize() bytes left
+	 */
+	public static void writeFull(GameWorld world, ByteBuffer b) {
+		write(world, b, true);
+	}
+
+	// writes the sections, the map with every tile or as its file and changes
+	private static void write(GameWorld world, ByteBuffer b, boolean full) {
+		b.putInt(MAGIC);
+		b.putShort(VERSION);
+
+		int start = begin(b, SECTION_WORLD);
+		b.putLong(world.getTick());
+		end(b, start);
+
+		if(full) {
+			start = begin(b, SECTION_MAP);
+			world.getMap().save(b);
+		} else {
+			start = begin(b, SECTION_MAP_FILE);
+			world.getMap().saveChanges(b);
+		}
+		end(b, start);
+
+		Tank[] tanks = world.getTanks();
+		start = begin(b, SECTION_TANKS);
+		b.putShort((short) tanks.length);
+		b.putShort((short) Tank.RECORD_SIZE);
+		for(int i = 0; i < tanks.length; i++) {
+			tanks[i].save(b);
+		}
+		end(b, start);
+
+		BulletPool bullets = world.getBullets();
+		start = begin(b, SECTION_BULLETS);
+		b.putShort((short) bullets.size());
+		b.putShort((short) BulletPool.RECORD_SIZE);
+		bullets.save(b);
+		end(b, start);
+	}
+
+	// starts a section, the length is filled by end()
+	private static int begin(ByteBuffer b, short tag) {
+		b.putShort(tag);
+		b.putInt(0);
+		return b.position();
+	}
+
+	// fills the length of the section started by begin()
+	private static void end(ByteBuffer b, int start) {
+		b.putInt(start - 4, b.position() - start);
+	}
+
+	// READ
+	/**
+	 * Reads a world written by write(), from the position of a buffer
+	 * @param b representing the buffer
+	 * @return a new world in the saved state
+	 * @throws IOException if the bytes are not a saved game
+	 */
+	public static GameWorld read(ByteBuffer b) throws IOException {
+		try {
+			if(b.getInt() != MAGIC)
+				throw new IOException("Not an iSpit saved game");
+			b.getShort(); // version, newer ones only add things we can skip
+
+			long tick = 0;
+			TileMap map = null;
+			Tank[] tanks = null;
+			ByteBuffer bullets = null;
+			int bulletCount = 0;
+			int bulletSize = 0;
+
+			while(b.hasRemaining()) {
+				short tag = b.getShort();
+				int length = b.getInt();
+				int next = b.position() + length;
+				switch(tag) {
+					case SECTION_WORLD:
+						tick = b.getLong();
+						break;
+					case SECTION_MAP:
+						map = TileMap.load(b);
+						break;
+					case SECTION_MAP_FILE:
+						map = TileMap.loadChanges(b);
+						break;
+					case SECTION_TANKS:
+						tanks = new Tank[b.getShort()];
+						int tankSize = b.getShort();
+						for(int i = 0; i < tanks.length; i++) {
+							tanks[i] = Tank.load(b, tankSize);
+						}
+						break;
+					case SECTION_BULLETS:
+						// read once the world exists
+						bulletCount = b.getShort();
+						bulletSize = b.getShort();
+						bullets = b.slice();
+						break;
+					default:
+						// a section from a newer version
+						break;
+				}
+				b.position(next);
+			}
+
+			if(map == null || tanks == null)
+				throw new IOException("Saved game is missing the map or the tanks");
+			GameWorld world = new GameWorld(map, tanks.length);
+			world.setTanks(tanks);
+			world.setTick(tick);
+			if(bullets != null)
+				world.getBullets().load(bullets, bulletCount, bulletSize);
+			return world;
+		} catch(RuntimeException e) {
+			// BufferUnderflow, bad enum ordinals...
+			throw new IOException("Corrupted saved game", e);
+		}
+	}
+
+	// FILES
+	/**
+	 * Saves a world to a file
+	 * @param world representing the world
+	 * @param f representing the file, replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	public static void save(GameWorld world, File f) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(maxSize(world));
+		write(world, b);
+		b.flip();
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(b.hasRemaining()) {
+				channel.write(b);
+			}
+		}
+	}
+
+	/**
+	 * Loads a world from a file
+	 * @param f representing the file
+	 * @return a new world in the saved state
+	 * @throws IOException if the file can't be read or is not a saved game
+	 */
+	public static GameWorld load(File f) throws IOException {
+		try(FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer b = ByteBuffer.allocate((int) channel.size());
+			while(b.hasRemaining()) {
+				if(channel.read(b) < 0)
+					break;
+			}
+			b.flip();
+			return read(b);
+		}
+	}
+}
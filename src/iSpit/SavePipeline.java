@@ -0,0 +1,186 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class saving the game without making the game loop wait for the disk.
+ * The game loop copies the world, in the SaveFormat, into one of a few
+ * buffers allocated once, every few ticks for the autosave and at the
+ * next tick after the user asked for a save. A writer thread then writes
+ * the copy to a temporary file and renames it over the target, so a
+ * crash in the middle never leaves half a save behind.
+ * <p>
+ * The buffers form a ring. Each one carries a stamp, odd while the game
+ * loop fills it and negative once the writer took the copy, so the writer
+ * can tell when a copy was replaced while it was being written and the
+ * game loop when it replaces one that was never written. The writer only
+ * writes the latest autosave, the saves asked for by the user are all
+ * written, or reported when so many come at once that their buffer is
+ * needed again before the disk got to them.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class SavePipeline {
+
+	// the number of copies kept in memory
+	private static final int SLOTS = 4;
+
+	// INSTANCE VARIABLES
+		// the ring, written by the game loop only
+	private final ByteBuffer[] slots = new ByteBuffer[SLOTS];
+	private final File[] targets = new File[SLOTS];
+		// 2 * sequence once a copy is ready, 2 * sequence - 1 while filling it,
+		// -2 * sequence once the writer is done with it
+	private final AtomicLongArray stamps = new AtomicLongArray(SLOTS);
+		// the sequence of the latest copy ready
+	private final AtomicLong published = new AtomicLong();
+		// the files the user asked for, in order, taken by the game loop
+	private final Queue<File> requested = new ConcurrentLinkedQueue<File>();
+
+	private final File autosave;
+	private final int interval;
+	private long lastAutosave = -1;
+	private final Thread writer;
+
+	/**
+	 * Creates the pipeline and starts its writer thread
+	 * @param autosave representing the file the autosaves go to
+	 * @param interval representing the ticks between two autosaves, 0 for none
+	 */
+	public SavePipeline(File autosave, int interval) {
+		this.autosave = autosave;
+		this.interval = interval;
+		writer = new Thread("iSpit save writer") {
+			@Override
+			public void run() {
+				write();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Asks for the world to be saved to a file at the next tick,
+	 * called by any thread. The game loop must be woken up if it is parked.
+	 * @param f representing the file, replaced if it exists
+	 */
+	public void request(File f) {
+		requested.add(f);
+	}
+
+	/**
+	 * Copies the world for every save asked for, or if an autosave is due,
+	 * called by the game loop between two ticks. Allocates nothing,
+	 * unless the world got bigger than the buffers.
+	 * @param world representing the world
+	 */
+	public void tick(GameWorld world) {
+		File f = requested.poll();
+		if(f != null) {
+			// every save asked for since the last tick, in order
+			do {
+				snapshot(world, f);
+				f = requested.poll();
+			} while(f != null);
+		} else if(interval > 0 && world.getTick() % interval == 0
+				&& world.getTick() != lastAutosave) {
+			lastAutosave = world.getTick();
+			snapshot(world, autosave);
+		}
+	}
+
+	// copies the world into the next buffer and hands it to the writer
+	private void snapshot(GameWorld world, File target) {
+		long sequence = published.get() + 1;
+		int i = (int) (sequence % SLOTS);
+		// a copy still ready was never taken by the writer
+		if(stamps.getAndSet(i, 2 * sequence - 1) > 0 && targets[i] != autosave)
+			System.out.println("Can't save " + targets[i] + ": too many saves at once");
+
+		int size = SaveFormat.maxSize(world);
+		if(slots[i] == null || slots[i].capacity() < size)
+			slots[i] = ByteBuffer.allocateDirect(size);
+		ByteBuffer b = slots[i];
+		b.clear();
+		SaveFormat.write(world, b);
+		b.flip();
+		targets[i] = target;
+
+		stamps.set(i, 2 * sequence);
+		published.set(sequence);
+		LockSupport.unpark(writer);
+	}
+
+	// WRITER THREAD
+	// writes the copies as they come, parked in between
+	private void write() {
+		long done = 0;
+		while(true) {
+			long latest = published.get();
+			if(latest == done) {
+				LockSupport.park(this);
+				continue;
+			}
+			// the older ones are already replaced
+			for(long sequence = Math.max(done + 1, latest - SLOTS + 1); sequence <= latest; sequence++) {
+				int i = (int) (sequence % SLOTS);
+				if(stamps.get(i) != 2 * sequence)
+					continue;
+				ByteBuffer b = slots[i].duplicate();
+				File target = targets[i];
+				// only the latest autosave matters
+				if(target == autosave && sequence != latest)
+					continue;
+				try {
+					writeFile(b, target, i, sequence);
+				} catch(IOException e) {
+					System.out.println("Can't save " + target + ": " + e.getMessage());
+					// told already, not lost to the ring
+					stamps.compareAndSet(i, 2 * sequence, -2 * sequence);
+				}
+			}
+			done = latest;
+		}
+	}
+
+	// writes a copy next to the target, then renames it over the target
+	private void writeFile(ByteBuffer b, File target, int i, long sequence) throws IOException {
+		Path path = target.toPath().toAbsolutePath();
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(b.hasRemaining()) {
+				channel.write(b);
+			}
+			channel.force(true);
+		}
+
+		// replaced by the game loop while writing, the copy is torn,
+		// the game loop tells when it takes the buffer back
+		if(!stamps.compareAndSet(i, 2 * sequence, -2 * sequence)) {
+			Files.deleteIfExists(temp);
+			return;
+		}
+
+		try {
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
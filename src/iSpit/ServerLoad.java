@@ -0,0 +1,185 @@
+package iSpit;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+
+/**
+ * Program loading a GameServer over loopback: it starts a server on a
+ * free local port, connects the players of many matches with GameClients
+ * sending random input every tick, and prints every second the ticks the
+ * server keeps up with, what a tick of all its matches costs and the
+ * states the clients get back. All the clients run on the calling
+ * thread, each sending and polling once per tick like the game loop.
+ * At the end it checks that every client got into a match and got its
+ * states. A match over waits a few seconds for the next one, sending
+ * no state, so the states per client are a little under the ticks.
+ * With --lag the clients go through a LagProxy holding the bytes back
+ * each way, and the states that moved the tank of a player away from
+ * where its client guessed it to be are counted against the frames.
+ * <p>
+ * Usage: ServerLoad matches [--players n] [--seconds s] [--lag delayMs [jitterMs]]
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class ServerLoad implements Commons {
+
+	// the ticks of the clients, as in the GamePanel
+	private static final long TICK_NANOS = 1000000000L / 30;
+	// ticks the clients may fall behind before they stop catching up
+	private static final int MAX_LATE_TICKS = 5;
+
+	/**
+	 * Loads a server and prints what it keeps up with
+	 * @param args the number of matches and the options
+	 */
+	public static void main(String[] args) {
+		int matches = 100;
+		int players = 2;
+		int seconds = 10;
+		int delay = -1;
+		int jitter = 0;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--players": players = Integer.parseInt(args[++i]); break;
+				case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+				case "--lag":
+					delay = Integer.parseInt(args[++i]);
+					if(i + 1 < args.length && !args[i + 1].startsWith("--"))
+						jitter = Integer.parseInt(args[++i]);
+					break;
+				default: matches = Integer.parseInt(args[i]); break;
+			}
+		}
+		try {
+			run(matches, players, seconds, delay, jitter);
+		} catch(IOException | InterruptedException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Starts a server on loopback, plays the matches on it and stops it
+	 * @param matches the number of matches
+	 * @param players the number of players of each match
+	 * @param seconds the seconds the matches are played
+	 * @param delay the milliseconds a LagProxy holds the bytes back each way, -1 for no proxy
+	 * @param jitter the most milliseconds the proxy adds at random to the delay
+	 * @throws IOException if the server or a client fails
+	 * @throws InterruptedException if interrupted while waiting for a tick
+	 */
+	public static void run(int matches, int players, int seconds, int delay, int jitter)
+			throws IOException, InterruptedException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		final GameServer server = new GameServer(new InetSocketAddress(loopback, 0), null, players);
+		start(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.run();
+				} catch(IOException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}, "iSpit server");
+		int port = server.getPort();
+		LagProxy proxy = null;
+		if(delay >= 0) {
+			proxy = new LagProxy(new InetSocketAddress(loopback, 0),
+					new InetSocketAddress(loopback, port), delay, jitter);
+			start(proxy, "iSpit lag proxy");
+			port = proxy.getPort();
+		}
+
+		// room 0: the server fills the matches one after the other
+		GameClient[] clients = new GameClient[matches * players];
+		for(int i = 0; i < clients.length; i++) {
+			clients[i] = new GameClient(loopback.getHostAddress(), port, 0);
+		}
+		System.out.printf("%d matches of %d players on port %d%s%n", matches, players, server.getPort(),
+				proxy != null ? ", through a proxy holding the bytes " + delay + " ms (+" + jitter + ")" : "");
+
+		// what came while connecting is not part of the load
+		for(GameClient client : clients) {
+			client.poll();
+		}
+		SplittableRandom random = new SplittableRandom(1);
+		long start = System.nanoTime();
+		long next = start;
+		long lastTicks = server.getTicks();
+		long lastStates = states(clients);
+		long frames = 0;
+		int second = 0;
+		try {
+			while(second < seconds) {
+				for(GameClient client : clients) {
+					client.send(random.nextInt(32));
+					client.poll();
+				}
+				frames += clients.length;
+				next += TICK_NANOS;
+				long now = System.nanoTime();
+				if(now - next > MAX_LATE_TICKS * TICK_NANOS)
+					next = now; // too far behind, the clients skip the ticks missed
+				else if(next > now)
+					Thread.sleep((next - now) / 1000000, (int) ((next - now) % 1000000));
+
+				if(now - start >= (second + 1) * 1000000000L) {
+					second++;
+					long ticks = server.getTicks();
+					long states = states(clients);
+					System.out.printf("server %d ticks/s, %.2f ms per tick of all the matches,"
+							+ " %.1f states/s per client, %d states dropped%n",
+							ticks - lastTicks, server.getTickNanos() / 1e6,
+							(double) (states - lastStates) / clients.length, server.getDropped());
+					lastTicks = ticks;
+					lastStates = states;
+				}
+			}
+			check(clients);
+			if(proxy != null) {
+				long corrections = 0;
+				for(GameClient client : clients) {
+					corrections += client.getCorrections();
+				}
+				System.out.printf("%d corrections in %d frames, 1 in %.0f%n",
+						corrections, frames, (double) frames / Math.max(corrections, 1));
+			}
+		} finally {
+			for(GameClient client : clients) {
+				client.close();
+			}
+			if(proxy != null)
+				proxy.stop();
+			server.stop();
+		}
+	}
+
+	// runs a loop on a thread of its own, not keeping the program alive
+	private static void start(Runnable loop, String name) {
+		Thread thread = new Thread(loop, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// the states received by all the clients
+	private static long states(GameClient[] clients) {
+		long states = 0;
+		for(GameClient client : clients) {
+			states += client.getStates();
+		}
+		return states;
+	}
+
+	// tells the clients that got no match or no state
+	private static void check(GameClient[] clients) {
+		int lost = 0;
+		for(GameClient client : clients) {
+			if(client.getWorld() == null || client.getPlayer() < 0 || client.getStates() == 0)
+				lost++;
+		}
+		System.out.printf("%d clients, %d without a match or a state%n", clients.length, lost);
+	}
+}
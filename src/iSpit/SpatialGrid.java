@@ -0,0 +1,173 @@
+package iSpit;
+
+/**
+ * Class sorting the tanks into the cells of a grid, so a bullet or a tank
+ * is only checked against the tanks close to it: the collisions of a tick
+ * cost a time proportional to the number of tanks and bullets, not to its
+ * square. The cells are hashed into a table of two to four buckets per
+ * tank, so the grid takes the same memory on a map of any size.
+ * Nothing is created while building or checking, the arrays only grow
+ * when there are more tanks than ever before.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class SpatialGrid implements Commons {
+
+	// the side of a cell in pixels, as a shift: 64, two tanks
+	private static final int CELL_SHIFT = 6;
+
+	// INSTANCE VARIABLES
+	private TankStore tanks;
+	private int count;
+		// the tanks of each bucket: from start[b] to start[b + 1] in items
+	private int[] start = new int[1];
+	private int[] items = new int[0];
+	private int mask;
+
+	/**
+	 * Sorts the tanks still alive into the cells they overlap
+	 * @param tanks the store holding the tanks
+	 */
+	public void build(TankStore tanks) {
+		int count = tanks.size();
+		this.tanks = tanks;
+		this.count = count;
+		int buckets = Integer.highestOneBit(Math.max(count, 1)) * 4;
+		if(start.length < buckets + 1)
+			start = new int[buckets + 1];
+		if(items.length < count * 4)
+			items = new int[count * 4];
+		mask = buckets - 1;
+
+		// counting the tanks of each bucket, then placing them in order
+		for(int b = 0; b <= buckets; b++) {
+			start[b] = 0;
+		}
+		int total = 0;
+		for(int i = 0; i < count; i++) {
+			if(tanks.isDead(i))
+				continue;
+			int x = tanks.getX(i);
+			int y = tanks.getY(i);
+			int cx1 = (x + TANK_WIDTH - 1) >> CELL_SHIFT;
+			int cy1 = (y + TANK_HEIGHT - 1) >> CELL_SHIFT;
+			for(int cy = y >> CELL_SHIFT; cy <= cy1; cy++) {
+				for(int cx = x >> CELL_SHIFT; cx <= cx1; cx++) {
+					start[bucket(cx, cy) + 1]++;
+					total++;
+				}
+			}
+		}
+		// start[b + 1] becomes the end of bucket b
+		for(int b = 0; b < buckets; b++) {
+			start[b + 1] += start[b];
+		}
+		// backwards, so each bucket lists its tanks in index order,
+		// and start[b + 1] comes down to the start of bucket b
+		for(int i = count - 1; i >= 0; i--) {
+			if(tanks.isDead(i))
+				continue;
+			int x = tanks.getX(i);
+			int y = tanks.getY(i);
+			int cx1 = (x + TANK_WIDTH - 1) >> CELL_SHIFT;
+			int cy1 = (y + TANK_HEIGHT - 1) >> CELL_SHIFT;
+			for(int cy = y >> CELL_SHIFT; cy <= cy1; cy++) {
+				for(int cx = x >> CELL_SHIFT; cx <= cx1; cx++) {
+					items[--start[bucket(cx, cy) + 1]] = i;
+				}
+			}
+		}
+		for(int b = 0; b < buckets; b++) {
+			start[b] = start[b + 1];
+		}
+		start[buckets] = total;
+	}
+
+	// the bucket of a cell, the cells far apart may share one
+	private int bucket(int cx, int cy) {
+		return (cx * 0x9E3779B1 + cy * 0x85EBCA77) >>> 8 & mask;
+	}
+
+	/**
+	 * Finds the first tank a box meets moving along one axis, the one
+	 * with the lowest index when several are met at the same distance
+	 * @param x the box position at the start, in pixels on horizontal axis
+	 * @param y the box position at the start, in pixels on vertical axis
+	 * @param w the box width in pixels
+	 * @param h the box height in pixels
+	 * @param vx the move on the horizontal axis, 0 when moving vertically
+	 * @param vy the move on the vertical axis, 0 when moving horizontally
+	 * @param leaving a tank the box is leaving, not met if overlapping at
+	 * 			the start but not at the end, like a bullet and its shooter
+	 * @return the index of the tank, -1 if none
+	 */
+	public int sweepTank(int x, int y, int w, int h, int vx, int vy, int leaving) {
+		int found = -1;
+		int distance = 0;
+		// the cells of the whole way
+		int cx1 = (Math.max(x, x + vx) + w - 1) >> CELL_SHIFT;
+		int cy1 = (Math.max(y, y + vy) + h - 1) >> CELL_SHIFT;
+		for(int cy = Math.min(y, y + vy) >> CELL_SHIFT; cy <= cy1; cy++) {
+			for(int cx = Math.min(x, x + vx) >> CELL_SHIFT; cx <= cx1; cx++) {
+				int b = bucket(cx, cy);
+				for(int k = start[b]; k < start[b + 1]; k++) {
+					int i = items[k];
+					if(tanks.isDead(i))
+						continue;
+					int tx = tanks.getX(i);
+					int ty = tanks.getY(i);
+					int d = Collisions.sweep(x, y, w, h, vx, vy, tx, ty, TANK_WIDTH, TANK_HEIGHT);
+					if(d < 0 || (found >= 0 && (d > distance || (d == distance && i >= found))))
+						continue;
+					if(i == leaving && Collisions.overlaps(x, y, w, h, tx, ty, TANK_WIDTH, TANK_HEIGHT)
+							&& !Collisions.overlaps(x + vx, y + vy, w, h, tx, ty, TANK_WIDTH, TANK_HEIGHT))
+						continue;
+					found = i;
+					distance = d;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Pushes apart every pair of overlapping tanks with
+	 * Collisions.resolvePair, in the order of the tanks, checking only
+	 * the tanks sharing a cell
+	 * @param tanks the tanks of the store the grid was built from
+	 * @param map the walls
+	 */
+	public void resolveTanks(Tank[] tanks, TileMap map) {
+		TankStore store = this.tanks;
+		for(int i = 0; i < count; i++) {
+			if(store.isDead(i))
+				continue;
+			int cx0 = store.getX(i) >> CELL_SHIFT;
+			int cy0 = store.getY(i) >> CELL_SHIFT;
+			int cx1 = (store.getX(i) + TANK_WIDTH - 1) >> CELL_SHIFT;
+			int cy1 = (store.getY(i) + TANK_HEIGHT - 1) >> CELL_SHIFT;
+			for(int cy = cy0; cy <= cy1; cy++) {
+				for(int cx = cx0; cx <= cx1; cx++) {
+					int b = bucket(cx, cy);
+					for(int k = start[b]; k < start[b + 1]; k++) {
+						int j = items[k];
+						if(j <= i)
+							continue;
+						int x = store.getX(j);
+						int y = store.getY(j);
+						// a pair sharing several cells is only pushed in the first one
+						if(store.isDead(j) || cx != Math.max(cx0, x >> CELL_SHIFT)
+								|| cy != Math.max(cy0, y >> CELL_SHIFT))
+							continue;
+						// the views only for the pairs that overlap, the pushes
+						// may have moved the first tank since its cells
+						if(Collisions.overlaps(store.getX(i), store.getY(i), TANK_WIDTH, TANK_HEIGHT,
+								x, y, TANK_WIDTH, TANK_HEIGHT))
+							Collisions.resolvePair(tanks[i], tanks[j], map);
+					}
+				}
+			}
+		}
+	}
+}
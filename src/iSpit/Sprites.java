@@ -0,0 +1,191 @@
+package iSpit;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Class holding all the images of the game. Each image from the
+ * resources is decoded only once and copied into a single atlas image,
+ * compatible with the screen so it can be kept in video memory.
+ * The game objects only know the id of their sprite.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class Sprites implements Commons {
+
+	// SPRITE IDS
+	public static final int BRICK = 0;
+	public static final int BULLET_H = 1;
+	public static final int BULLET_V = 2;
+	/** First tank sprite, 8 per color: direction by direction, 2 frames each */
+	public static final int TANK = 3;
+	/** The number of tank colors: the two of the images, then the first one painted in other hues */
+	public static final int COLORS = 8;
+
+	// the images in the order of their ids
+	private static final String[] FILES = {
+		"Brick.png", "Bullet_H.png", "Bullet_V.png",
+		"Tank1Up.png", "Tank1Up1.png", "Tank1Down.png", "Tank1Down1.png",
+		"Tank1Left.png", "Tank1Left1.png", "Tank1Right.png", "Tank1Right1.png",
+		"Tank2Up.png", "Tank2Up1.png", "Tank2Down.png", "Tank2Down1.png",
+		"Tank2Left.png", "Tank2Left1.png", "Tank2Right.png", "Tank2Right1.png"
+	};
+
+	// the hues the first tank is painted in for the colors after the two of the images, from 0 to 1
+	private static final float[] HUES = { 0.33f, 0.15f, 0.83f, 0.07f, 0.64f, 0.75f };
+	// the solid pixels of the first tank painted over: its red ones, not the see-through details
+	private static final float RED_HUES = 0.05f;
+	private static final int SOLID = 0xd0;
+	// the sprites, the painted tanks after the images
+	private static final int COUNT = FILES.length + HUES.length * 8;
+
+	// width of the atlas in pixels, the sprites are packed in rows
+	private static final int ATLAS_WIDTH = 256;
+
+	private static volatile BufferedImage atlas;
+		// the place of each sprite in the atlas
+	private static int[] sx = new int[COUNT];
+	private static int[] sy = new int[COUNT];
+	private static int[] sw = new int[COUNT];
+	private static int[] sh = new int[COUNT];
+
+	private Sprites() {}
+
+	/**
+	 * Get the id of the sprite of a tank
+	 * @param player representing the player owning the tank
+	 * @param dir representing the direction the tank is facing
+	 * @return the sprite id
+	 */
+	public static int tank(Players player, Direction dir) {
+		return tank(player.ordinal(), dir);
+	}
+
+	/**
+	 * Get the id of the sprite of a tank, the colors taking turns
+	 * when there are more players than colors
+	 * @param player representing the index of the player owning the tank
+	 * @param dir representing the direction the tank is facing
+	 * @return the sprite id
+	 */
+	public static int tank(int player, Direction dir) {
+		return TANK + player % COLORS * 8 + dir.ordinal() * 2;
+	}
+
+	/**
+	 * Get the color of the tanks of a player, for the texts about it
+	 * @param player representing the index of the player
+	 * @return the color
+	 */
+	public static Color color(int player) {
+		int c = player % COLORS;
+		if(c < 2)
+			return c == 0 ? Color.RED : Color.CYAN;
+		return Color.getHSBColor(HUES[c - 2], 0.88f, 0.93f);
+	}
+
+	/**
+	 * Draws a sprite scaled to the specified place
+	 * @param g graphics context
+	 * @param id the sprite id
+	 * @param x the position in pixels on horizontal axis from left to right
+	 * @param y the position in pixels on vertical axis from top to bottom
+	 * @param w the width in pixels
+	 * @param h the height in pixels
+	 */
+	public static void draw(Graphics2D g, int id, int x, int y, int w, int h) {
+		BufferedImage image = getAtlas();
+		g.drawImage(image, x, y, x + w, y + h,
+				sx[id], sy[id], sx[id] + sw[id], sy[id] + sh[id], null);
+	}
+
+	/**
+	 * Get the atlas, decoding the images the first time.
+	 * Only the first call takes a lock.
+	 * @return the image holding all the sprites
+	 */
+	public static BufferedImage getAtlas() {
+		BufferedImage result = atlas;
+		if(result == null) {
+			synchronized(Sprites.class) {
+				result = atlas;
+				if(result == null)
+					atlas = result = load();
+			}
+		}
+		return result;
+	}
+
+	// decodes every image once, paints the other tank colors and packs them into the atlas
+	private static BufferedImage load() {
+		BufferedImage[] images = new BufferedImage[COUNT];
+		int x = 0;
+		int y = 0;
+		int rowHeight = 0;
+		for(int i = 0; i < COUNT; i++) {
+			if(i >= FILES.length) {
+				images[i] = paint(images[TANK + (i - FILES.length) % 8], HUES[(i - FILES.length) / 8]);
+			} else {
+				URL url = iSpit.class.getResource("/" + FILES[i]);
+				try {
+					images[i] = ImageIO.read(url);
+				} catch(IOException | IllegalArgumentException e) {
+					System.out.println("ERROR! Can't load " + FILES[i]);
+					images[i] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+				}
+			}
+			sw[i] = images[i].getWidth();
+			sh[i] = images[i].getHeight();
+			// next row when this one is full, 1 pixel between sprites
+			if(x + sw[i] > ATLAS_WIDTH) {
+				x = 0;
+				y += rowHeight + 1;
+				rowHeight = 0;
+			}
+			sx[i] = x;
+			sy[i] = y;
+			x += sw[i] + 1;
+			rowHeight = Math.max(rowHeight, sh[i]);
+		}
+
+		BufferedImage result;
+		if(GraphicsEnvironment.isHeadless()) {
+			result = new BufferedImage(ATLAS_WIDTH, y + rowHeight, BufferedImage.TYPE_INT_ARGB);
+		} else {
+			result = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration()
+					.createCompatibleImage(ATLAS_WIDTH, y + rowHeight, Transparency.TRANSLUCENT);
+		}
+		Graphics2D g = result.createGraphics();
+		for(int i = 0; i < COUNT; i++) {
+			g.drawImage(images[i], sx[i], sy[i], null);
+		}
+		g.dispose();
+		return result;
+	}
+
+	// a copy of a tank image with its red painted in another hue, the shading kept
+	private static BufferedImage paint(BufferedImage image, float hue) {
+		BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		float[] hsb = new float[3];
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				int argb = image.getRGB(x, y);
+				Color.RGBtoHSB(argb >> 16 & 0xff, argb >> 8 & 0xff, argb & 0xff, hsb);
+				float red = Math.min(hsb[0], 1 - hsb[0]);
+				if(argb >>> 24 >= SOLID && red < RED_HUES && hsb[1] > 0.5f)
+					argb = argb & 0xff000000 | Color.HSBtoRGB(hue, hsb[1], hsb[2]) & 0xffffff;
+				result.setRGB(x, y, argb);
+			}
+		}
+		return result;
+	}
+}
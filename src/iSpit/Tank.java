@@ -1,123 +1,52 @@
 package iSpit;
 
-import java.awt.Graphics2D;
-import java.awt.Image;
-import java.io.Serializable;
-import java.net.URL;
-
-import javax.swing.ImageIcon;
+import java.nio.ByteBuffer;
 
 /**
  * Class used for creating tank instances.
  * A tank is a graphical representation of a player 
- * and can be controlled by the user
+ * and can be controlled by the user.
+ * The state of the tank lives in a row of a TankStore, shared with
+ * the other tanks of its world, the tank only reads and writes it.
  * @author Dan-Eduard Petrescu
  *
  */
-public class Tank implements Commons, Serializable {
+public class Tank implements Commons {
 	
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = -6855468575991249376L;
+	/** Bytes written by save(), older readers skip the ones they don't know */
+	static final int RECORD_SIZE = TankStore.RECORD_SIZE;
 	
 	// INSTANCE VARIABLES
-	/** Tank Images corresponding to different directions */
-	private transient Image tankUp, tankDown, tankLeft, tankRight;
-	
-		// coordinates
-	private int x;
-	private int y;
-		// speed
-	private int dx;
-	private int dy;
-		// direction
-	private Direction direction;
-	private boolean up;
-	private boolean down;
-	private boolean left;
-	private boolean right;
-		// tank collision
-	private boolean tankCollisionUp;
-	private boolean tankCollisionDown;
-	private boolean tankCollisionLeft;
-	private boolean tankCollisionRight;
-		// living
-	private boolean visible;
-	private int lives;
-	private boolean dead;
-		// shooting
-	private boolean firing;
-	private long firingTimer;
-	private long firingDelay;
+		// the columns holding the tank and its index in them
+	private final TankStore store;
+	private final int row;
 	
 	/**
-	 * Creates an instance of Tank with 3 lives
+	 * Creates an instance of Tank with 3 lives, at the starting
+	 * place of one of the two players of a classic match
 	 * @param player representing the player that is created
 	 */
 	public Tank(Players player) {
-		
-		dx = TANK_SPEED;
-		dy = TANK_SPEED;
-		visible = true;
-		lives = 3;
-		firing = false;
-		firingTimer = System.currentTimeMillis();
-		firingDelay = 250;
+		this(player.ordinal(), 0, 0, Direction.DOWN);
 		
 		switch(player) {
 		
 			case PLAYER1:
 				// starting coordinates (orientation)
-				x = TANK_WIDTH;
-				y = TANK_WIDTH;
+				setX(TANK_WIDTH);
+				setY(TANK_WIDTH);
 				
 				// starting direction
-				direction = Direction.DOWN;
-				
-				// loading up the images for the tank
-				URL tankUpUrl = iSpit.class.getResource(
-		                "/Tank1Up.png");
-				tankUp = new ImageIcon(tankUpUrl).getImage();
-				
-				URL tankDownUrl = iSpit.class.getResource(
-		                "/Tank1Down.png");
-				tankDown = new ImageIcon(tankDownUrl).getImage();
-				
-				URL tankLeftUrl = iSpit.class.getResource(
-		                "/Tank1Left.png");
-				tankLeft = new ImageIcon(tankLeftUrl).getImage();
-				
-				URL tankRightUrl = iSpit.class.getResource(
-		                "/Tank1Right.png");
-				tankRight = new ImageIcon(tankRightUrl).getImage();
+				setDirection(Direction.DOWN);
 				break;
 				
 			case PLAYER2:
 				// starting coordinates
-				x = PANEL_WIDTH - 2 * TANK_WIDTH;
-				y = PANEL_HEIGHT - 2 * TANK_WIDTH;
+				setX(PANEL_WIDTH - 2 * TANK_WIDTH);
+				setY(PANEL_HEIGHT - 2 * TANK_WIDTH);
 				
 				// starting direction (orientation)
-				direction = Direction.UP;
-				
-				// loading up the images for the tank
-				URL tankUpUrl1 = iSpit.class.getResource(
-		                "/Tank2Up.png");
-				tankUp = new ImageIcon(tankUpUrl1).getImage();
-				
-				URL tankDownUrl1 = iSpit.class.getResource(
-		                "/Tank2Down.png");
-				tankDown = new ImageIcon(tankDownUrl1).getImage();
-				
-				URL tankLeftUrl1 = iSpit.class.getResource(
-		                "/Tank2Left.png");
-				tankLeft = new ImageIcon(tankLeftUrl1).getImage();
-				
-				URL tankRightUrl1 = iSpit.class.getResource(
-		                "/Tank2Right.png");
-				tankRight = new ImageIcon(tankRightUrl1).getImage();
-				
+				setDirection(Direction.UP);
 				break;
 				
 			default:
@@ -128,110 +57,64 @@ public class Tank implements Commons, Serializable {
 	}
 	
 	/**
-	 * Draw the tank according to the direction it is facing
-	 * @param g graphics context
+	 * Creates an instance of Tank with 3 lives for any player,
+	 * in a store of its own
+	 * @param player representing the index of the player, from 0
+	 * @param x the starting position in pixels on horizontal axis from left to right
+	 * @param y the starting position in pixels on vertical axis from top to bottom
+	 * @param dir the starting direction
 	 */
-	public void draw(Graphics2D g) {
-		if(!dead) {
-			switch(direction) {
-			case UP :
-				g.drawImage(tankUp, x, y, TANK_WIDTH, TANK_HEIGHT, null);
-				break;
-			case DOWN:
-				g.drawImage(tankDown, x, y, TANK_WIDTH, TANK_HEIGHT, null);
-				break;
-			case LEFT:
-				g.drawImage(tankLeft, x, y, TANK_WIDTH, TANK_HEIGHT, null);
-				break;
-			case RIGHT:
-				g.drawImage(tankRight, x, y, TANK_WIDTH, TANK_HEIGHT, null);
-				break;
-			default:
-				System.out.println("Error drawing the tank, no such direction!");
-			}
-		}
+	public Tank(int player, int x, int y, Direction dir) {
+		this(new TankStore(1), 0);
+		store.add(player, x, y, dir);
 	}
 	
 	/**
-	 * Updates the tank and bullets movement
-	 *  according to the user commands
+	 * Creates a view of a tank held by a store
+	 * @param store representing the store
+	 * @param row the index of the tank in the store
 	 */
-	public void update() {
-		// tank update
-		if(up) { moveUp(); }
-		if(down) { moveDown(); }
-		if(left) { moveLeft(); }
-		if(right) { moveRight(); }
-		// bullets update
-		if(firing) {
-			long elapsed = (System.currentTimeMillis() - firingTimer);
-			if(elapsed > firingDelay) {
-				if(direction == Direction.UP)
-					GamePanel.bullets.add(new Bullet(x + TANK_WIDTH / 2, y, Direction.UP));
-				if(direction == Direction.DOWN)
-					GamePanel.bullets.add(new Bullet(x + TANK_WIDTH / 2, y + TANK_HEIGHT, Direction.DOWN));
-				if(direction == Direction.LEFT)
-					GamePanel.bullets.add(new Bullet(x, y  + TANK_HEIGHT / 2, Direction.LEFT));
-				if(direction == Direction.RIGHT)
-					GamePanel.bullets.add(new Bullet(x + TANK_WIDTH, y + TANK_HEIGHT / 2, Direction.RIGHT));
-				firingTimer = System.currentTimeMillis();
-			}
-		}
+	Tank(TankStore store, int row) {
+		this.store = store;
+		this.row = row;
 	}
 	
-	// HIT METHOD
 	/**
-	 * This method decrements the lives of the hit player
+	 * Updates the tank and bullets movement
+	 *  according to the user commands
+	 * @param world representing the world the fired bullets are added to
 	 */
-	public void hit() {
-			lives--;
-		if(lives <= 0)
-			dead = true;
+	public void update(GameWorld world) {
+		store.update(row, world);
 	}
 	
-	// MOVE METHODS
-	/** Moves the tank up 32 pixels */
-	private void moveUp() {
-		setDirection(Direction.UP);
-		if(!tankCollisionUp) {
-			if(y - dy <= 0)
-				y = 0;
-			else
-				y -= dy;
-		}
-	}
-	
-	/** Moves the tank down 32 pixels */
-	private void moveDown() {
-		setDirection(Direction.DOWN);
-		if(!tankCollisionDown) {
-			if(y + dy >= PANEL_WIDTH - TANK_WIDTH)
-				y = PANEL_WIDTH - TANK_WIDTH;
-			else
-				y += dy;
-		}
+	// SAVE AND LOAD
+	/**
+	 * Writes the whole state of the tank, RECORD_SIZE bytes
+	 * @param b representing the buffer to write to
+	 */
+	void save(ByteBuffer b) {
+		store.save(row, b);
 	}
 	
-	/** Moves the tank left 32 pixels */
-	private void moveLeft() {
-		setDirection(Direction.LEFT);
-		if(!tankCollisionLeft) {
-			if(x - dx <= 0)
-				x = 0;
-			else
-				x -= dx;
-		}
+	/**
+	 * Reads a tank written by save()
+	 * @param b representing the buffer to read from
+	 * @param size representing the bytes of the record, 
+	 * 			can be more than this version knows about
+	 * @return the tank
+	 */
+	static Tank load(ByteBuffer b, int size) {
+		TankStore store = new TankStore(1);
+		return new Tank(store, store.load(b, size));
 	}
 	
-	/** Moves the tank right 32 pixels */
-	private void moveRight() {
-		setDirection(Direction.RIGHT);
-		if(!tankCollisionRight) {
-			if(x + dx >= PANEL_WIDTH - TANK_WIDTH)
-				x = PANEL_WIDTH - TANK_WIDTH;
-			else
-				x += dx;
-		}
+	// HIT METHOD
+	/**
+	 * This method decrements the lives of the hit player
+	 */
+	public void hit() {
+		store.hit(row);
 	}
 	
 	// GETTERS
@@ -240,176 +123,169 @@ public class Tank implements Commons, Serializable {
 		 * @return the current tank position in pixels on horizontal axis
 		 * 			from left to right 
 		 */
-		public int getX() {	return x; }
+		public int getX() {	return store.getX(row); }
 		/** 
 		 * Get the current y axis position
 		 * @return the current tank position in pixels on vertical axis 
 		 * 			from top to bottom 
 		 */
-		public int getY() {	return y; }
+		public int getY() {	return store.getY(row); }
 		/** 
 		 * Get the visibility of the tank
 		 * @return a boolean describing if the tank is visible or not */
-		public boolean isVisible() { return visible; }
+		public boolean isVisible() { return store.is(row, TankStore.VISIBLE); }
 		/** 
 		 * Get the number of tank lives
 		 * @return the number of lives left */
-		public int getLives() { return lives; }
+		public int getLives() { return store.getLives(row); }
 		/** 
 		 * Get if the tank facing direction is up or not
 		 * @return a boolean describing if the tank is facing up */
-		public boolean getUp() { return up;	}
+		public boolean getUp() { return store.is(row, TankStore.UP); }
 		/**
 		 * Get if the tank facing direction is down or not
 		 *  @return a boolean describing if the tank is facing down */
-		public boolean getDown() { return down; }
+		public boolean getDown() { return store.is(row, TankStore.DOWN); }
 		/** 
 		 * Get if the tank facing direction is left or not
 		 * @return a boolean describing if the tank is facing left */
-		public boolean getLeft() { return left; }
+		public boolean getLeft() { return store.is(row, TankStore.LEFT); }
 		/** 
 		 * Get if the tank facing direction is right or not
 		 * @return a boolean describing if the tank is facing right */
-		public boolean getRight() {	return right; }
+		public boolean getRight() {	return store.is(row, TankStore.RIGHT); }
+		/** 
+		 * Get the direction the tank is facing
+		 * @return the direction */
+		public Direction getDirection() { return store.getDirection(row); }
+		/** 
+		 * Get the player owning the tank
+		 * @return the index of the player, from 0 */
+		public int getPlayer() { return store.getPlayer(row); }
 		/** 
 		 * Get the dead or alive state of a tank
 		 * @return a boolean describing if the tank is dead or not */
-		public boolean isDead() { return dead; }
+		public boolean isDead() { return store.isDead(row); }
+		/** 
+		 * Get the ticks left before the tank can fire again
+		 * @return the number of ticks */
+		public int getFiringTimer() { return store.getCooldown(row); }
+		/** 
+		 * Get the pixels the tank moves in a tick
+		 * @return the speed */
+		public int getSpeed() { return store.getSpeed(row); }
+		/** 
+		 * Get the store holding the tank
+		 * @return the store */
+		TankStore getStore() { return store; }
+		/** 
+		 * Get the index of the tank in its store
+		 * @return the index */
+		int getRow() { return row; }
 		
 		// SETTERS
 		/** 
 		 * Sets the direction that the tank is moving  
 		 * @param dir representing the direction to move
 		 */
-		public void setDirection(Direction dir) { direction = dir; }
+		public void setDirection(Direction dir) { store.setDirection(row, dir); }
 		
 		/** 
 		 * Sets the current tank position in pixels on horizontal axis
 		 * 	from left to right
 		 * @param x representing the number of pixels
 		 */
-		public void setX(int x) { this.x = x; }
+		public void setX(int x) { store.setX(row, x); }
 		
 		/**
 		 * Sets the current tank position in pixels on horizontal axis
 		 * from left to right
 		 * @param y representing the number of pixels
 		 */
-		public void setY(int y) { this.y = y; }
+		public void setY(int y) { store.setY(row, y); }
 		
 		/**
 		 * Set the tank facing up
 		 * @param b representing if facing up or not
 		 */
-		public void setUp(boolean b) { up = b; }
+		public void setUp(boolean b) { store.set(row, TankStore.UP, b); }
 		
 		/**
 		 * Set the tank facing down
 		 * @param b representing if facing down or not
 		 */
-		public void setDown(boolean b) { down = b; }
+		public void setDown(boolean b) { store.set(row, TankStore.DOWN, b); }
 		
 		/**
 		 * Set the tank facing left
 		 * @param b representing if facing left or not
 		 */
-		public void setLeft(boolean b) { left = b; }
+		public void setLeft(boolean b) { store.set(row, TankStore.LEFT, b); }
 		
 		/**
 		 * Set the tank facing right
 		 * @param b representing if facing right or not
 		 */
-		public void setRight(boolean b) { right = b; }
+		public void setRight(boolean b) { store.set(row, TankStore.RIGHT, b); }
 		
 		/**
 		 * Set the tank visible
 		 * @param b representing if tank is visible or not
 		 */
-		public void setVisible(boolean b) { visible = b; }
+		public void setVisible(boolean b) { store.set(row, TankStore.VISIBLE, b); }
 		
 		/**
 		 * Set the tank to firing state, as firing bullets 
 		 * @param b representing if tank is firing or not
 		 */
-		public void setFiring(boolean b) { firing = b; }
+		public void setFiring(boolean b) { store.set(row, TankStore.FIRING, b); }
 		
 		/**
 		 * Sets the tank as colliding up, meaning can't move up anymore
 		 * @param b representing if tank is colliding up or not
 		 */
-		public void setTankCollisionUp(boolean b) { tankCollisionUp = b; }
+		public void setTankCollisionUp(boolean b) { store.set(row, TankStore.COLLISION_UP, b); }
 		
 		/**
 		 * Sets the tank as colliding down, meaning can't move down anymore
 		 * @param b representing if tank is colliding down or not
 		 */
-		public void setTankCollisionDown(boolean b) { tankCollisionDown = b; }
+		public void setTankCollisionDown(boolean b) { store.set(row, TankStore.COLLISION_DOWN, b); }
 		
 		/**
 		 * Sets the tank as colliding left, meaning can't move left anymore
 		 * @param b representing if tank is colliding left or not
 		 */
-		public void setTankCollisionLeft(boolean b) { tankCollisionLeft = b; }
+		public void setTankCollisionLeft(boolean b) { store.set(row, TankStore.COLLISION_LEFT, b); }
 		
 		/**
 		 * Sets the tank as colliding right, meaning can't move right anymore
 		 * @param b representing if tank is colliding right or not
 		 */
-		public void setTankCollisionRight(boolean b) { tankCollisionRight = b; }
+		public void setTankCollisionRight(boolean b) { store.set(row, TankStore.COLLISION_RIGHT, b); }
 		
+		/**
+		 * Sets the pixels the tank moves in a tick, TANK_SPEED by default
+		 * @param speed representing the number of pixels
+		 */
+		public void setSpeed(int speed) { store.setSpeed(row, speed); }
 		
 		/**
-		 * Gets the images from the resources and sets the visual representation
-		 * of the user on the screen according to the direction he is facing
-		 * @param player representing the actual player that will get the image
+		 * Sets the ticks between two bullets, 8 by default
+		 * @param delay representing the number of ticks
 		 */
-		// used in the load method
-		public void setImage(Players player) {
-			switch(player) {
-			case PLAYER1:
-				
-				URL tankUpUrl = iSpit.class.getResource(
-		                "/Tank1Up.png");
-				tankUp = new ImageIcon(tankUpUrl).getImage();
-				
-				URL tankDownUrl = iSpit.class.getResource(
-		                "/Tank1Down.png");
-				tankDown = new ImageIcon(tankDownUrl).getImage();
-				
-				URL tankLeftUrl = iSpit.class.getResource(
-		                "/Tank1Left.png");
-				tankLeft = new ImageIcon(tankLeftUrl).getImage();
-				
-				URL tankRightUrl = iSpit.class.getResource(
-		                "/Tank1Right.png");
-				tankRight = new ImageIcon(tankRightUrl).getImage();
-				break;
-				
-			case PLAYER2:
-				
-				URL tankUpUrl1 = iSpit.class.getResource(
-		                "/Tank2Up.png");
-				tankUp = new ImageIcon(tankUpUrl1).getImage();
-				
-				URL tankDownUrl1 = iSpit.class.getResource(
-		                "/Tank2Down.png");
-				tankDown = new ImageIcon(tankDownUrl1).getImage();
-				
-				URL tankLeftUrl1 = iSpit.class.getResource(
-		                "/Tank2Left.png");
-				tankLeft = new ImageIcon(tankLeftUrl1).getImage();
-				
-				URL tankRightUrl1 = iSpit.class.getResource(
-		                "/Tank2Right.png");
-				tankRight = new ImageIcon(tankRightUrl1).getImage();
+		public void setFiringDelay(int delay) { store.setFiringDelay(row, delay); }
 		
-				break;
-				
-			default:
-				System.out.println("Error! NO SUCH PLAYER!");
-				break;
-			}
-		}
+		/**
+		 * Sets the lives left, 3 at the start
+		 * @param lives representing the number of lives
+		 */
+		public void setLives(int lives) { store.setLives(row, lives); }
 		
+		/**
+		 * Sets the ticks left before the tank can fire again
+		 * @param ticks representing the number of ticks
+		 */
+		public void setFiringTimer(int ticks) { store.setCooldown(row, ticks); }
 	
 }
@@ -0,0 +1,415 @@
+package iSpit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class holding the tanks of a world as columns of primitives, one array
+ * per component and one index per tank: position, speed, facing, lives,
+ * firing cooldown and owner, with the movement, firing, collision and
+ * living flags packed into one int.
+ * The systems of a tick (input, movement, firing, clearing the
+ * collisions) are plain loops over the columns, so an arena with tens of
+ * thousands of tanks is walked in order through memory instead of from
+ * object to object, and the movement works on a range of tanks so the
+ * ranges can be split over the cores. A Tank is only a view of one row
+ * of a store.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public final class TankStore implements Commons {
+
+	// the directions by their ordinal, values() copies the array each call
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// the flags of a tank, the movement and firing ones are the input bits,
+	// the same as in the saved games
+	static final int UP = INPUT_UP;
+	static final int DOWN = INPUT_DOWN;
+	static final int LEFT = INPUT_LEFT;
+	static final int RIGHT = INPUT_RIGHT;
+	static final int FIRING = INPUT_FIRE;
+	static final int COLLISION_UP = 32;
+	static final int COLLISION_DOWN = 64;
+	static final int COLLISION_LEFT = 128;
+	static final int COLLISION_RIGHT = 256;
+	static final int VISIBLE = 512;
+	static final int DEAD = 1024;
+	private static final int INPUT = UP | DOWN | LEFT | RIGHT | FIRING;
+	private static final int COLLISIONS = COLLISION_UP | COLLISION_DOWN | COLLISION_LEFT | COLLISION_RIGHT;
+	// the direction a tank ends up facing for each of its movement flags,
+	// right over left over down over up, -1 to keep the one it had
+	private static final byte[] FACING = new byte[16];
+	static {
+		for(int f = 0; f < FACING.length; f++) {
+			Direction dir = (f & RIGHT) != 0 ? Direction.RIGHT : (f & LEFT) != 0 ? Direction.LEFT
+					: (f & DOWN) != 0 ? Direction.DOWN : (f & UP) != 0 ? Direction.UP : null;
+			FACING[f] = (byte) (dir != null ? dir.ordinal() : -1);
+		}
+	}
+
+	// INSTANCE VARIABLES
+		// position
+	private final int[] x;
+	private final int[] y;
+		// speed
+	private final int[] dx;
+	private final int[] dy;
+		// direction ordinal and the flags
+	private final byte[] facing;
+	private final int[] flags;
+		// living
+	private final int[] lives;
+		// shooting, in ticks
+	private final int[] cooldown;
+	private final int[] delay;
+		// owner, also picking the sprites
+	private final int[] player;
+		// number of tanks
+	private int size;
+
+	/**
+	 * Creates an empty store
+	 * @param capacity the number of tanks it holds
+	 */
+	public TankStore(int capacity) {
+		x = new int[capacity];
+		y = new int[capacity];
+		dx = new int[capacity];
+		dy = new int[capacity];
+		facing = new byte[capacity];
+		flags = new int[capacity];
+		lives = new int[capacity];
+		cooldown = new int[capacity];
+		delay = new int[capacity];
+		player = new int[capacity];
+	}
+
+	/**
+	 * Adds a tank with 3 lives
+	 * @param player the index of the player, from 0
+	 * @param x the starting position in pixels on horizontal axis from left to right
+	 * @param y the starting position in pixels on vertical axis from top to bottom
+	 * @param dir the starting direction
+	 * @return the index of the tank
+	 */
+	public int add(int player, int x, int y, Direction dir) {
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		dx[i] = TANK_SPEED;
+		dy[i] = TANK_SPEED;
+		facing[i] = (byte) dir.ordinal();
+		flags[i] = VISIBLE;
+		lives[i] = 3;
+		// the delay is counted in ticks (250 ms at 30 FPS) so the
+		// simulation does not depend on the wall clock
+		delay[i] = 8;
+		cooldown[i] = 8;
+		this.player[i] = player;
+		return i;
+	}
+
+	/**
+	 * Adds a copy of a tank of another store
+	 * @param from the other store
+	 * @param j the index of the tank in the other store
+	 * @return the index of the tank
+	 */
+	public int add(TankStore from, int j) {
+		int i = size++;
+		x[i] = from.x[j];
+		y[i] = from.y[j];
+		dx[i] = from.dx[j];
+		dy[i] = from.dy[j];
+		facing[i] = from.facing[j];
+		flags[i] = from.flags[j];
+		lives[i] = from.lives[j];
+		cooldown[i] = from.cooldown[j];
+		delay[i] = from.delay[j];
+		player[i] = from.player[j];
+		return i;
+	}
+
+	// SYSTEMS
+	/**
+	 * Sets the movement and firing flags of every tank from the input bits
+	 * @param inputs the input bits of each tank (INPUT_UP, INPUT_FIRE, ...)
+	 */
+	public void setInputs(int[] inputs) {
+		for(int i = 0; i < size; i++) {
+			flags[i] = flags[i] & ~INPUT | inputs[i] & INPUT;
+		}
+	}
+
+	/**
+	 * Sets the movement and firing flags of a tank from the input bits
+	 * @param i the index of the tank
+	 * @param bits the input bits (INPUT_UP, INPUT_FIRE, ...)
+	 */
+	public void setInput(int i, int bits) {
+		flags[i] = flags[i] & ~INPUT | bits & INPUT;
+	}
+
+	/**
+	 * Sets every tank to not colliding with another
+	 */
+	public void clearCollisions() {
+		for(int i = 0; i < size; i++) {
+			flags[i] &= ~COLLISIONS;
+		}
+	}
+
+	/**
+	 * Sets a tank to not colliding with another
+	 * @param i the index of the tank
+	 */
+	public void clearCollisions(int i) {
+		flags[i] &= ~COLLISIONS;
+	}
+
+	/**
+	 * Moves a range of tanks, each one only changing itself so the
+	 * ranges can move on different threads
+	 * @param from the index of the first tank
+	 * @param to the index after the last tank
+	 * @param maxX the rightmost position of a tank in pixels
+	 * @param maxY the lowest position of a tank in pixels
+	 */
+	public void move(int from, int to, int maxX, int maxY) {
+		for(int i = from; i < to; i++) {
+			move(i, maxX, maxY);
+		}
+	}
+
+	/**
+	 * Fires the bullets of every tank that can, in the order of the tanks
+	 * @param world representing the world the fired bullets are added to
+	 */
+	public void fire(GameWorld world) {
+		for(int i = 0; i < size; i++) {
+			fire(i, world);
+		}
+	}
+
+	/**
+	 * Moves a tank according to its flags, out of the walls it drove
+	 * into, then fires if it can
+	 * @param i the index of the tank
+	 * @param world representing the world the fired bullets are added to
+	 */
+	public void update(int i, GameWorld world) {
+		move(i, world.getMap().getWidth() * BRICK_WIDTH - TANK_WIDTH,
+				world.getMap().getHeight() * BRICK_HEIGHT - TANK_HEIGHT);
+		Collisions.resolveWalls(this, i, world.getMap());
+		fire(i, world);
+	}
+
+	// moves a tank, without leaving the map nor going where it collides,
+	// facing the last of up, down, left and right it moves along
+	private void move(int i, int maxX, int maxY) {
+		int f = flags[i];
+		if(FACING[f & (UP | DOWN | LEFT | RIGHT)] >= 0)
+			facing[i] = FACING[f & (UP | DOWN | LEFT | RIGHT)];
+		if((f & (UP | COLLISION_UP)) == UP)
+			y[i] = Math.max(y[i] - dy[i], 0);
+		if((f & (DOWN | COLLISION_DOWN)) == DOWN)
+			y[i] = Math.min(y[i] + dy[i], maxY);
+		if((f & (LEFT | COLLISION_LEFT)) == LEFT)
+			x[i] = Math.max(x[i] - dx[i], 0);
+		if((f & (RIGHT | COLLISION_RIGHT)) == RIGHT)
+			x[i] = Math.min(x[i] + dx[i], maxX);
+	}
+
+	// fires a bullet from the front of a tank once the cooldown is over
+	private void fire(int i, GameWorld world) {
+		if(cooldown[i] > 0)
+			cooldown[i]--;
+		if((flags[i] & FIRING) == 0 || cooldown[i] != 0)
+			return;
+		Direction dir = DIRECTIONS[facing[i]];
+		switch(dir) {
+			case UP:
+				world.fire(x[i] + TANK_WIDTH / 2, y[i], dir, player[i]);
+				break;
+			case DOWN:
+				world.fire(x[i] + TANK_WIDTH / 2, y[i] + TANK_HEIGHT, dir, player[i]);
+				break;
+			case LEFT:
+				world.fire(x[i], y[i] + TANK_HEIGHT / 2, dir, player[i]);
+				break;
+			case RIGHT:
+				world.fire(x[i] + TANK_WIDTH, y[i] + TANK_HEIGHT / 2, dir, player[i]);
+				break;
+		}
+		cooldown[i] = delay[i];
+	}
+
+	/**
+	 * Decrements the lives of a hit tank
+	 * @param i the index of the tank
+	 */
+	public void hit(int i) {
+		if(--lives[i] <= 0)
+			flags[i] |= DEAD;
+	}
+
+	// SAVE AND LOAD
+	/** Bytes written for each tank, older readers skip the ones they don't know */
+	static final int RECORD_SIZE = 34;
+
+	/**
+	 * Writes the whole state of a tank, RECORD_SIZE bytes
+	 * @param i the index of the tank
+	 * @param b representing the buffer to write to
+	 */
+	void save(int i, ByteBuffer b) {
+		b.put((byte) player[i]);
+		b.put(facing[i]);
+		b.putShort((short) flags[i]);
+		b.putInt(x[i]);
+		b.putInt(y[i]);
+		b.putInt(dx[i]);
+		b.putInt(dy[i]);
+		b.putInt(lives[i]);
+		b.putInt(cooldown[i]);
+		b.putInt(delay[i]);
+		b.putShort((short) (player[i] >>> 8)); // the rest of the player index
+	}
+
+	/**
+	 * Adds a tank written by save()
+	 * @param b representing the buffer to read from
+	 * @param recordSize representing the bytes of the record,
+	 * 			can be more than this version knows about
+	 * @return the index of the tank
+	 */
+	int load(ByteBuffer b, int recordSize) {
+		int start = b.position();
+		int i = size++;
+		player[i] = b.get() & 0xFF;
+		facing[i] = (byte) DIRECTIONS[b.get()].ordinal(); // a bad ordinal fails here
+		flags[i] = b.getShort() & 0xFFFF;
+		x[i] = b.getInt();
+		y[i] = b.getInt();
+		dx[i] = b.getInt();
+		dy[i] = b.getInt();
+		lives[i] = b.getInt();
+		cooldown[i] = b.getInt();
+		delay[i] = b.getInt();
+		if(recordSize >= RECORD_SIZE)
+			player[i] |= (b.getShort() & 0xFFFF) << 8;
+		b.position(start + recordSize);
+		return i;
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of tanks
+	 * @return the number of tanks */
+	public int size() { return size; }
+	/**
+	 * Get the current x axis position
+	 * @param i the index of the tank
+	 * @return the current tank position in pixels on horizontal axis
+	 *			from left to right */
+	public int getX(int i) { return x[i]; }
+	/**
+	 * Get the current y axis position
+	 * @param i the index of the tank
+	 * @return the current tank position in pixels on vertical axis
+	 *			from top to bottom */
+	public int getY(int i) { return y[i]; }
+	/**
+	 * Get the direction the tank is facing
+	 * @param i the index of the tank
+	 * @return the direction */
+	public Direction getDirection(int i) { return DIRECTIONS[facing[i]]; }
+	/**
+	 * Get a flag of the tank
+	 * @param i the index of the tank
+	 * @param flag the flag, UP, COLLISION_UP, DEAD...
+	 * @return a boolean describing if the flag is set or not */
+	boolean is(int i, int flag) { return (flags[i] & flag) != 0; }
+	/**
+	 * Get the dead or alive state of a tank
+	 * @param i the index of the tank
+	 * @return a boolean describing if the tank is dead or not */
+	public boolean isDead(int i) { return (flags[i] & DEAD) != 0; }
+	/**
+	 * Get the number of tank lives
+	 * @param i the index of the tank
+	 * @return the number of lives left */
+	public int getLives(int i) { return lives[i]; }
+	/**
+	 * Get the ticks left before the tank can fire again
+	 * @param i the index of the tank
+	 * @return the number of ticks */
+	public int getCooldown(int i) { return cooldown[i]; }
+	/**
+	 * Get the pixels the tank moves in a tick
+	 * @param i the index of the tank
+	 * @return the speed */
+	public int getSpeed(int i) { return dx[i]; }
+	/**
+	 * Get the player owning the tank
+	 * @param i the index of the tank
+	 * @return the index of the player, from 0 */
+	public int getPlayer(int i) { return player[i]; }
+
+	// SETTERS
+	/**
+	 * Sets or clears a flag of the tank
+	 * @param i the index of the tank
+	 * @param flag the flag, UP, COLLISION_UP, VISIBLE...
+	 * @param b representing if set or not
+	 */
+	void set(int i, int flag, boolean b) {
+		if(b)
+			flags[i] |= flag;
+		else
+			flags[i] &= ~flag;
+	}
+	/**
+	 * Sets the current tank position in pixels on horizontal axis
+	 * @param i the index of the tank
+	 * @param x representing the number of pixels
+	 */
+	public void setX(int i, int x) { this.x[i] = x; }
+	/**
+	 * Sets the current tank position in pixels on vertical axis
+	 * @param i the index of the tank
+	 * @param y representing the number of pixels
+	 */
+	public void setY(int i, int y) { this.y[i] = y; }
+	/**
+	 * Sets the direction the tank is facing
+	 * @param i the index of the tank
+	 * @param dir representing the direction
+	 */
+	public void setDirection(int i, Direction dir) { facing[i] = (byte) dir.ordinal(); }
+	/**
+	 * Sets the pixels the tank moves in a tick
+	 * @param i the index of the tank
+	 * @param speed representing the number of pixels
+	 */
+	public void setSpeed(int i, int speed) { dx[i] = speed; dy[i] = speed; }
+	/**
+	 * Sets the ticks between two bullets, and the ones left before the next
+	 * @param i the index of the tank
+	 * @param ticks representing the number of ticks
+	 */
+	public void setFiringDelay(int i, int ticks) { delay[i] = ticks; cooldown[i] = ticks; }
+	/**
+	 * Sets the lives left, the tank is dead without any
+	 * @param i the index of the tank
+	 * @param lives representing the number of lives
+	 */
+	public void setLives(int i, int lives) { this.lives[i] = lives; set(i, DEAD, lives <= 0); }
+	/**
+	 * Sets the ticks left before the tank can fire again
+	 * @param i the index of the tank
+	 * @param ticks representing the number of ticks
+	 */
+	public void setCooldown(int i, int ticks) { cooldown[i] = ticks; }
+}
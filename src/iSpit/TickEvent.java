@@ -0,0 +1,71 @@
+package iSpit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event written for every tick of the game, with the
+ * time spent in each phase. Only loaded by the Profiler when the running
+ * Java has the Flight Recorder (8u262 and later).
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+@Name("iSpit.Tick")
+@Label("Tick")
+@Category("iSpit")
+@Description("One tick of the simulation and the time spent in each phase")
+@StackTrace(false)
+class TickEvent extends jdk.jfr.Event {
+
+	@Label("Tick")
+	long tick;
+
+	@Label("Input")
+	@Timespan(Timespan.NANOSECONDS)
+	long input;
+
+	@Label("Tanks")
+	@Timespan(Timespan.NANOSECONDS)
+	long tanks;
+
+	@Label("Bullets")
+	@Timespan(Timespan.NANOSECONDS)
+	long bullets;
+
+	@Label("Collisions")
+	@Timespan(Timespan.NANOSECONDS)
+	long collisions;
+
+	@Label("Bullets Flying")
+	int bulletCount;
+
+	/**
+	 * Writes the events for the Profiler, creating nothing when no
+	 * recording asks for them
+	 */
+	static class Writer implements Profiler.EventWriter {
+		private final EventType type = EventType.getEventType(TickEvent.class);
+
+		@Override
+		public void tick(long tick, long input, long tanks, long bullets, long collisions, int bulletCount) {
+			if(!type.isEnabled())
+				return;
+			TickEvent event = new TickEvent();
+			if(!event.shouldCommit())
+				return;
+			event.tick = tick;
+			event.input = input;
+			event.tanks = tanks;
+			event.bullets = bullets;
+			event.collisions = collisions;
+			event.bulletCount = bulletCount;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,595 @@
+package iSpit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class used for answering the question "is there a wall here?".
+ * The map is cut into chunks of 32 by 32 tiles, each chunk keeping
+ * one bit per tile, an int per row, so checking a box against the walls
+ * only looks at the tiles the box touches, no matter how big the map is.
+ * <p>
+ * A map opened by the MapLoader is streamed: a chunk is only decoded
+ * from the file when something gets near it, and the chunks far from
+ * the tanks are dropped again when too many are decoded, so a huge
+ * arena takes as little memory as a small one.
+ * Only the game loop may decode chunks, the drawing uses peek().
+ * Its saves only name the file and hold the chunks changed since.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class TileMap implements Commons {
+
+	/** Tiles on each side of a chunk, as a shift */
+	public static final int CHUNK_SHIFT = 5;
+	/** Tiles on each side of a chunk */
+	public static final int CHUNK = 1 << CHUNK_SHIFT;
+
+	// shared by all the chunks without walls, never written to
+	private static final int[] EMPTY = new int[CHUNK];
+	// the most chunks decoded before dropping the far ones
+	private static final int MAX_DECODED = 1024;
+
+	// INSTANCE VARIABLES
+		// size in tiles
+	private int width;
+	private int height;
+		// size in chunks
+	private int chunksX;
+	private int chunksY;
+		// one int per row of 32 tiles, null when not decoded yet
+	private int[][] chunks;
+		// incremented every time a tile changes, and the version
+		// of the last change of each chunk, 0 for never changed
+	private int version;
+	private int[] changedAt;
+
+		// streaming, null source when the whole map is in memory
+	private MapLoader source;
+	private byte[] path;
+	private boolean[] changed;
+	private int changes;
+	private int[] focused;
+	private int generation = 1;
+	private int decoded;
+
+	/**
+	 * Creates an empty map
+	 * @param width the number of tiles on the horizontal axis
+	 * @param height the number of tiles on the vertical axis
+	 */
+	public TileMap(int width, int height) {
+		this.width = width;
+		this.height = height;
+		chunksX = (width + CHUNK - 1) >> CHUNK_SHIFT;
+		chunksY = (height + CHUNK - 1) >> CHUNK_SHIFT;
+		chunks = new int[chunksX * chunksY][];
+		for(int i = 0; i < chunks.length; i++) {
+			chunks[i] = EMPTY;
+		}
+		changedAt = new int[chunks.length];
+	}
+
+	/**
+	 * Creates a map from the numbers representing the view,
+	 * 0 for free space and anything else for brick
+	 * @param coord the tiles, row after row
+	 * @param width the number of tiles on the horizontal axis
+	 * @param height the number of tiles on the vertical axis
+	 */
+	public TileMap(int[] coord, int width, int height) {
+		this(width, height);
+		for(int i = 0; i < coord.length && i < width * height; i++) {
+			if(coord[i] != 0)
+				set(i % width, i / width, true);
+		}
+	}
+
+	/**
+	 * Creates a map decoding its chunks from a file, when needed
+	 * @param source the opened map file
+	 * @param width the number of tiles on the horizontal axis
+	 * @param height the number of tiles on the vertical axis
+	 */
+	TileMap(MapLoader source, int width, int height) {
+		this(width, height);
+		this.source = source;
+		path = source.getFile().getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+		changed = new boolean[chunks.length];
+		focused = new int[chunks.length];
+		for(int i = 0; i < chunks.length; i++) {
+			chunks[i] = null;
+		}
+	}
+
+	// CHUNKS
+	// the chunk at a chunk position, decoding it if needed
+	private int[] chunk(int cx, int cy) {
+		int i = cy * chunksX + cx;
+		int[] rows = chunks[i];
+		if(rows == null) {
+			rows = source.decode(i);
+			if(rows == null)
+				rows = EMPTY;
+			chunks[i] = rows;
+			decoded++;
+		}
+		return rows;
+	}
+
+	/**
+	 * Get the rows of a chunk, decoding it if needed
+	 * @param cx the chunk column from left to right
+	 * @param cy the chunk row from top to bottom
+	 * @return one int per row of the chunk, bit 0 being its left tile
+	 */
+	int[] getChunk(int cx, int cy) {
+		return chunk(cx, cy);
+	}
+
+	/**
+	 * Keeps the chunks around a point decoded, called by the game loop
+	 * every tick for the places that matter: the tanks and the view.
+	 * Does nothing on a map that is all in memory.
+	 * @param x the position in pixels on horizontal axis from left to right
+	 * @param y the position in pixels on vertical axis from top to bottom
+	 */
+	public void focus(int x, int y) {
+		if(source == null)
+			return;
+		int cx = Math.floorDiv(Math.floorDiv(x, BRICK_WIDTH), CHUNK);
+		int cy = Math.floorDiv(Math.floorDiv(y, BRICK_HEIGHT), CHUNK);
+		for(int j = Math.max(cy - 1, 0); j <= Math.min(cy + 1, chunksY - 1); j++) {
+			for(int i = Math.max(cx - 1, 0); i <= Math.min(cx + 1, chunksX - 1); i++) {
+				chunk(i, j);
+				focused[j * chunksX + i] = generation;
+			}
+		}
+	}
+
+	/**
+	 * Ends the focus of a tick: when too many chunks are decoded,
+	 * drops the ones nobody focused on lately. The changed chunks are kept.
+	 */
+	public void release() {
+		if(source == null)
+			return;
+		generation++;
+		if(decoded <= MAX_DECODED)
+			return;
+		for(int i = 0; i < chunks.length; i++) {
+			if(chunks[i] != null && !changed[i] && generation - focused[i] > 1) {
+				chunks[i] = null;
+				decoded--;
+			}
+		}
+	}
+
+	/**
+	 * Opens the same walls again for another world, without reading the
+	 * file again: a streamed map keeps decoded the chunks around the tanks
+	 * of one world only, so worlds running side by side each need their own.
+	 * A map all in memory is only read by the worlds and is shared as is.
+	 * @return the map of the other world
+	 */
+	public TileMap reopen() {
+		if(source == null)
+			return this;
+		TileMap map = new TileMap(source, width, height);
+		for(int i = 0; i < chunks.length; i++) {
+			if(changed[i]) {
+				map.chunks[i] = chunks[i].clone();
+				map.changed[i] = true;
+				map.changes++;
+				map.decoded++;
+			}
+		}
+		return map;
+	}
+
+	// SAVE AND LOAD
+	/**
+	 * Get the number of bytes written by save()
+	 * @return the size in bytes
+	 */
+	int savedSize() {
+		return 8 + (int) (((long) width * height + 63) >> 6) * 8;
+	}
+
+	/**
+	 * Writes the size and all the tiles, one bit per tile row after row.
+	 * The chunks that were not decoded are decoded only for this.
+	 * @param b the buffer to write to
+	 */
+	void save(ByteBuffer b) {
+		b.putInt(width);
+		b.putInt(height);
+		long word = 0;
+		int bit = 0;
+		for(int ty = 0; ty < height; ty++) {
+			for(int cx = 0; cx < chunksX; cx++) {
+				int count = Math.min(CHUNK, width - (cx << CHUNK_SHIFT));
+				long bits = peekChunk(cx, ty >> CHUNK_SHIFT)[ty & (CHUNK - 1)] & ((1L << count) - 1);
+				// the row goes at the end of the word, what doesn't fit starts the next one
+				word |= bits << bit;
+				bit += count;
+				if(bit >= 64) {
+					b.putLong(word);
+					bit -= 64;
+					word = bits >>> (count - bit);
+				}
+			}
+		}
+		if(bit > 0)
+			b.putLong(word);
+	}
+
+	// a chunk as it is, decoding it without keeping it if needed
+	private int[] peekChunk(int cx, int cy) {
+		int[] rows = chunks[cy * chunksX + cx];
+		if(rows == null) {
+			rows = source.decode(cy * chunksX + cx);
+			if(rows == null)
+				rows = EMPTY;
+		}
+		return rows;
+	}
+
+	/**
+	 * Get the number of bytes written by saveChanges()
+	 * @return the size in bytes
+	 */
+	int savedChangesSize() {
+		return 2 + path.length + 8 + 4 + changes * (4 + CHUNK * 4);
+	}
+
+	/**
+	 * Writes the file a streamed map was opened from, its size and the
+	 * chunks changed since, so a save doesn't hold the whole arena
+	 * @param b the buffer to write to
+	 */
+	void saveChanges(ByteBuffer b) {
+		b.putShort((short) path.length);
+		b.put(path);
+		b.putInt(width);
+		b.putInt(height);
+		b.putInt(changes);
+		for(int i = 0; i < chunks.length; i++) {
+			if(!changed[i])
+				continue;
+			b.putInt(i);
+			// a changed chunk is never dropped
+			int[] rows = chunks[i];
+			for(int row = 0; row < CHUNK; row++) {
+				b.putInt(rows[row]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a map written by saveChanges(), opening its file again
+	 * @param b the buffer to read from
+	 * @return the map
+	 * @throws IOException if the file can't be opened or is not the same size
+	 */
+	static TileMap loadChanges(ByteBuffer b) throws IOException {
+		byte[] path = new byte[b.getShort() & 0xFFFF];
+		b.get(path);
+		String name = new String(path, StandardCharsets.UTF_8);
+		TileMap map = MapLoader.load(new File(name));
+		if(map.width != b.getInt() || map.height != b.getInt())
+			throw new IOException("The map " + name + " changed since the game was saved");
+		int count = b.getInt();
+		for(int c = 0; c < count; c++) {
+			int i = b.getInt();
+			int[] rows = new int[CHUNK];
+			for(int row = 0; row < CHUNK; row++) {
+				rows[row] = b.getInt();
+			}
+			if(map.chunks[i] == null)
+				map.decoded++;
+			map.chunks[i] = rows;
+			map.changed[i] = true;
+			map.changes++;
+		}
+		return map;
+	}
+
+	/**
+	 * Reads a map written by save()
+	 * @param b the buffer to read from
+	 * @return the map
+	 */
+	static TileMap load(ByteBuffer b) {
+		TileMap map = new TileMap(b.getInt(), b.getInt());
+		long tiles = (long) map.width * map.height;
+		long word = 0;
+		for(long i = 0; i < tiles; i++) {
+			if((i & 63) == 0)
+				word = b.getLong();
+			if((word & (1L << i)) != 0)
+				map.set((int) (i % map.width), (int) (i / map.width), true);
+		}
+		return map;
+	}
+
+	// QUERIES
+	/**
+	 * Checks if a tile is a wall. Everything outside the map is free space.
+	 * @param tx the tile column from left to right
+	 * @param ty the tile row from top to bottom
+	 * @return a boolean describing if the tile is a wall or not
+	 */
+	public boolean isSolid(int tx, int ty) {
+		if(tx < 0 || ty < 0 || tx >= width || ty >= height)
+			return false;
+		int[] rows = chunk(tx >> CHUNK_SHIFT, ty >> CHUNK_SHIFT);
+		return (rows[ty & (CHUNK - 1)] & (1 << (tx & (CHUNK - 1)))) != 0;
+	}
+
+	/**
+	 * Checks if a tile is a wall without decoding anything, for drawing
+	 * from another thread. The tiles of a chunk not decoded are free space.
+	 * @param tx the tile column from left to right
+	 * @param ty the tile row from top to bottom
+	 * @return a boolean describing if the tile is a wall or not
+	 */
+	public boolean peek(int tx, int ty) {
+		if(tx < 0 || ty < 0 || tx >= width || ty >= height)
+			return false;
+		int[] rows = chunks[(ty >> CHUNK_SHIFT) * chunksX + (tx >> CHUNK_SHIFT)];
+		return rows != null && (rows[ty & (CHUNK - 1)] & (1 << (tx & (CHUNK - 1)))) != 0;
+	}
+
+	/**
+	 * Checks if a box overlaps any wall. Touching edges don't count,
+	 * the same as Rectangle.intersects.
+	 * @param x the box position in pixels on horizontal axis from left to right
+	 * @param y the box position in pixels on vertical axis from top to bottom
+	 * @param w the box width in pixels
+	 * @param h the box height in pixels
+	 * @return a boolean describing if the box touches a wall or not
+	 */
+	public boolean intersects(int x, int y, int w, int h) {
+		if(w <= 0 || h <= 0)
+			return false;
+		int tx0 = Math.max(Math.floorDiv(x, BRICK_WIDTH), 0);
+		int ty0 = Math.max(Math.floorDiv(y, BRICK_HEIGHT), 0);
+		int tx1 = Math.min(Math.floorDiv(x + w - 1, BRICK_WIDTH), width - 1);
+		int ty1 = Math.min(Math.floorDiv(y + h - 1, BRICK_HEIGHT), height - 1);
+		for(int ty = ty0; ty <= ty1; ty++) {
+			// a whole row of a chunk at once
+			for(int tx = tx0; tx <= tx1; tx = (tx | (CHUNK - 1)) + 1) {
+				int last = Math.min(tx1, tx | (CHUNK - 1));
+				int[] rows = chunk(tx >> CHUNK_SHIFT, ty >> CHUNK_SHIFT);
+				int mask = (-1 >>> (CHUNK - 1 - (last & (CHUNK - 1)))) & (-1 << (tx & (CHUNK - 1)));
+				if((rows[ty & (CHUNK - 1)] & mask) != 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the first wall a box meets moving along one axis, walking the
+	 * tiles on its way one row or column after the other, so a box moving
+	 * fast can't jump over a wall
+	 * @param x the box position in pixels on horizontal axis from left to right
+	 * @param y the box position in pixels on vertical axis from top to bottom
+	 * @param w the box width in pixels
+	 * @param h the box height in pixels
+	 * @param vx the move on the horizontal axis, 0 when moving vertically
+	 * @param vy the move on the vertical axis, 0 when moving horizontally
+	 * @return the distance moved before touching the wall in pixels, 0 if
+	 * 			touching one from the start, -1 if there is none on the way
+	 */
+	public int sweep(int x, int y, int w, int h, int vx, int vy) {
+		if(w <= 0 || h <= 0)
+			return -1;
+		if(vx != 0) {
+			int ty0 = Math.floorDiv(y, BRICK_HEIGHT);
+			int ty1 = Math.floorDiv(y + h - 1, BRICK_HEIGHT);
+			if(vx > 0) {
+				int last = Math.min(Math.floorDiv(x + w - 1 + vx, BRICK_WIDTH), width - 1);
+				for(int tx = Math.max(Math.floorDiv(x, BRICK_WIDTH), 0); tx <= last; tx++) {
+					if(isSolidColumn(tx, ty0, ty1))
+						return Math.max(tx * BRICK_WIDTH - x - w + 1, 0);
+				}
+			} else {
+				int last = Math.max(Math.floorDiv(x + vx, BRICK_WIDTH), 0);
+				for(int tx = Math.min(Math.floorDiv(x + w - 1, BRICK_WIDTH), width - 1); tx >= last; tx--) {
+					if(isSolidColumn(tx, ty0, ty1))
+						return Math.max(x - (tx + 1) * BRICK_WIDTH + 1, 0);
+				}
+			}
+			return -1;
+		}
+		int tx0 = Math.floorDiv(x, BRICK_WIDTH);
+		int tx1 = Math.floorDiv(x + w - 1, BRICK_WIDTH);
+		if(vy > 0) {
+			int last = Math.min(Math.floorDiv(y + h - 1 + vy, BRICK_HEIGHT), height - 1);
+			for(int ty = Math.max(Math.floorDiv(y, BRICK_HEIGHT), 0); ty <= last; ty++) {
+				if(isSolidRow(ty, tx0, tx1))
+					return Math.max(ty * BRICK_HEIGHT - y - h + 1, 0);
+			}
+		} else {
+			int last = Math.max(Math.floorDiv(y + vy, BRICK_HEIGHT), 0);
+			for(int ty = Math.min(Math.floorDiv(y + h - 1, BRICK_HEIGHT), height - 1); ty >= last; ty--) {
+				if(isSolidRow(ty, tx0, tx1))
+					return Math.max(y - (ty + 1) * BRICK_HEIGHT + 1, 0);
+			}
+		}
+		return -1;
+	}
+
+	// checks if any tile of a column between two rows is a wall
+	private boolean isSolidColumn(int tx, int ty0, int ty1) {
+		for(int ty = ty0; ty <= ty1; ty++) {
+			if(isSolid(tx, ty))
+				return true;
+		}
+		return false;
+	}
+
+	// checks if any tile of a row between two columns is a wall
+	private boolean isSolidRow(int ty, int tx0, int tx1) {
+		for(int tx = tx0; tx <= tx1; tx++) {
+			if(isSolid(tx, ty))
+				return true;
+		}
+		return false;
+	}
+
+	// FREE TILES
+	/**
+	 * Counts the free tiles of the map. The chunks not decoded are
+	 * counted by the file, nothing is decoded for this.
+	 * @return the number of free tiles
+	 */
+	public long countFree() {
+		long free = 0;
+		for(int i = 0; i < chunks.length; i++) {
+			free += countFree(i);
+		}
+		return free;
+	}
+
+	// the free tiles of a chunk that are inside the map
+	private int countFree(int i) {
+		int[] rows = chunks[i];
+		if(rows == null)
+			return source.countFree(i);
+		int h = Math.min(CHUNK, height - (i / chunksX << CHUNK_SHIFT));
+		int free = Math.min(CHUNK, width - (i % chunksX << CHUNK_SHIFT)) * h;
+		for(int row = 0; row < h; row++) {
+			free -= Integer.bitCount(rows[row]);
+		}
+		return free;
+	}
+
+	/**
+	 * Finds free tiles by the number of free tiles before them, row after
+	 * row from the top left. Only the rows of chunks holding one of them
+	 * are decoded, without keeping them.
+	 * @param ranks the number of free tiles before each tile, increasing,
+	 * 			under countFree()
+	 * @param tx the tile columns found, from left to right
+	 * @param ty the tile rows found, from top to bottom
+	 */
+	public void findFree(long[] ranks, int[] tx, int[] ty) {
+		int[][] band = new int[chunksX][];
+		int next = 0;
+		long seen = 0;
+		for(int cy = 0; cy < chunksY && next < ranks.length; cy++) {
+			long free = 0;
+			for(int cx = 0; cx < chunksX; cx++) {
+				free += countFree(cy * chunksX + cx);
+			}
+			// no tile wanted in this row of chunks
+			if(seen + free <= ranks[next]) {
+				seen += free;
+				continue;
+			}
+			for(int cx = 0; cx < chunksX; cx++) {
+				band[cx] = peekChunk(cx, cy);
+			}
+			int h = Math.min(CHUNK, height - (cy << CHUNK_SHIFT));
+			for(int row = 0; row < h; row++) {
+				for(int cx = 0; cx < chunksX; cx++) {
+					int w = Math.min(CHUNK, width - (cx << CHUNK_SHIFT));
+					int open = ~band[cx][row] & (w == CHUNK ? -1 : (1 << w) - 1);
+					int count = Integer.bitCount(open);
+					while(next < ranks.length && ranks[next] < seen + count) {
+						// dropping the free tiles before the one wanted
+						int bits = open;
+						for(long k = ranks[next] - seen; k > 0; k--) {
+							bits &= bits - 1;
+						}
+						tx[next] = (cx << CHUNK_SHIFT) + Integer.numberOfTrailingZeros(bits);
+						ty[next] = (cy << CHUNK_SHIFT) + row;
+						next++;
+					}
+					seen += count;
+				}
+			}
+		}
+	}
+
+	// GETTERS
+	/**
+	 * Get the number of tiles on the horizontal axis
+	 * @return the map width in tiles */
+	public int getWidth() { return width; }
+	/**
+	 * Get the number of tiles on the vertical axis
+	 * @return the map height in tiles */
+	public int getHeight() { return height; }
+	/**
+	 * Get the version of the map, changing every time a tile changes
+	 * @return the current version */
+	public int getVersion() { return version; }
+	/**
+	 * Get the version of the map as far as an area is concerned, only
+	 * changing when a tile of the chunks covering the area changes
+	 * @param tx0 the left tile column of the area
+	 * @param ty0 the top tile row of the area
+	 * @param tx1 the right tile column of the area, included
+	 * @param ty1 the bottom tile row of the area, included
+	 * @return the version of the last change around the area, 0 if none */
+	public int getVersion(int tx0, int ty0, int tx1, int ty1) {
+		int last = 0;
+		for(int cy = Math.max(ty0, 0) >> CHUNK_SHIFT; cy <= Math.min(ty1, height - 1) >> CHUNK_SHIFT; cy++) {
+			for(int cx = Math.max(tx0, 0) >> CHUNK_SHIFT; cx <= Math.min(tx1, width - 1) >> CHUNK_SHIFT; cx++) {
+				last = Math.max(last, changedAt[cy * chunksX + cx]);
+			}
+		}
+		return last;
+	}
+	/**
+	 * Get the number of chunks decoded right now
+	 * @return the number of chunks in memory */
+	public int getDecodedChunks() { return source == null ? chunks.length : decoded; }
+	/**
+	 * Get if the chunks are decoded from a file when needed, then a query
+	 * may change the map and only the game loop may make it
+	 * @return a boolean describing if the map is streamed or all in memory */
+	public boolean isStreamed() { return source != null; }
+
+	// SETTERS
+	/**
+	 * Turns a tile into a wall or into free space
+	 * @param tx the tile column from left to right
+	 * @param ty the tile row from top to bottom
+	 * @param solid representing if the tile is a wall or not
+	 */
+	public void setSolid(int tx, int ty, boolean solid) {
+		if(tx < 0 || ty < 0 || tx >= width || ty >= height)
+			return;
+		set(tx, ty, solid);
+		int i = (ty >> CHUNK_SHIFT) * chunksX + (tx >> CHUNK_SHIFT);
+		if(source != null && !changed[i]) {
+			changed[i] = true;
+			changes++;
+		}
+		changedAt[i] = ++version;
+	}
+
+	// changes a tile, copying the shared empty chunk first
+	private void set(int tx, int ty, boolean solid) {
+		int i = (ty >> CHUNK_SHIFT) * chunksX + (tx >> CHUNK_SHIFT);
+		int[] rows = chunk(tx >> CHUNK_SHIFT, ty >> CHUNK_SHIFT);
+		if(rows == EMPTY) {
+			if(!solid)
+				return;
+			rows = new int[CHUNK];
+			chunks[i] = rows;
+		}
+		if(solid)
+			rows[ty & (CHUNK - 1)] |= 1 << (tx & (CHUNK - 1));
+		else
+			rows[ty & (CHUNK - 1)] &= ~(1 << (tx & (CHUNK - 1)));
+	}
+}
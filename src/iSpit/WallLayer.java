@@ -0,0 +1,130 @@
+package iSpit;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Class used for drawing the walls of the map. The walls never move,
+ * so all the bricks are drawn once into an image kept in video memory
+ * and every frame only copies that image to the screen.
+ * The image is drawn again when the map changes, or is replaced by a new
+ * game, a loaded one or a replay, and when its contents are lost. A map too big for one image is drawn brick by brick,
+ * only the bricks in view.
+ *
+ * @author Dan-Eduard Petrescu
+ *
+ */
+public class WallLayer implements Commons {
+
+	// the biggest map kept in a single image, in pixels
+	private static final int MAX_IMAGE = 2048;
+
+	// INSTANCE VARIABLES
+		// the bricks, a VolatileImage when there is a screen
+	private Image image;
+		// the map and its version the image was drawn for
+	private TileMap map;
+	private int version;
+
+	/**
+	 * Draws the walls of a map, drawing the bricks again only if needed
+	 * @param g graphics context, in map coordinates
+	 * @param map representing the walls
+	 * @param viewX the left of the view in pixels
+	 * @param viewY the top of the view in pixels
+	 * @param viewWidth the width of the view in pixels
+	 * @param viewHeight the height of the view in pixels
+	 */
+	public void draw(Graphics2D g, TileMap map, int viewX, int viewY, int viewWidth, int viewHeight) {
+		int width = map.getWidth() * BRICK_WIDTH;
+		int height = map.getHeight() * BRICK_HEIGHT;
+		if(width > MAX_IMAGE || height > MAX_IMAGE) {
+			drawView(g, map, viewX, viewY, viewWidth, viewHeight);
+			return;
+		}
+		boolean dirty = map != this.map || map.getVersion() != version;
+
+		if(GraphicsEnvironment.isHeadless()) {
+			if(image == null || image.getWidth(null) != width || image.getHeight(null) != height) {
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				dirty = true;
+			}
+			if(dirty)
+				render(map);
+			g.drawImage(image, 0, 0, null);
+			return;
+		}
+
+		GraphicsConfiguration gc = g.getDeviceConfiguration();
+		VolatileImage volatileImage;
+		do {
+			if(!(image instanceof VolatileImage)
+					|| image.getWidth(null) != width || image.getHeight(null) != height) {
+				create(gc, width, height);
+				dirty = true;
+			}
+			volatileImage = (VolatileImage) image;
+			int status = volatileImage.validate(gc);
+			if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				create(gc, width, height);
+				volatileImage = (VolatileImage) image;
+				dirty = true;
+			} else if(status == VolatileImage.IMAGE_RESTORED) {
+				dirty = true;
+			}
+			if(dirty) {
+				render(map);
+				dirty = false;
+			}
+			g.drawImage(volatileImage, 0, 0, null);
+		} while(volatileImage.contentsLost());
+	}
+
+	// draws the bricks in view straight away
+	private void drawView(Graphics2D g, TileMap map, int viewX, int viewY, int viewWidth, int viewHeight) {
+		if(image != null) {
+			image.flush();
+			image = null;
+		}
+		int tx1 = (viewX + viewWidth - 1) / BRICK_WIDTH;
+		int ty1 = (viewY + viewHeight - 1) / BRICK_HEIGHT;
+		for(int ty = viewY / BRICK_HEIGHT; ty <= ty1; ty++) {
+			for(int tx = viewX / BRICK_WIDTH; tx <= tx1; tx++) {
+				if(map.peek(tx, ty))
+					Sprites.draw(g, Sprites.BRICK, tx * BRICK_WIDTH, ty * BRICK_HEIGHT,
+							BRICK_WIDTH, BRICK_HEIGHT);
+			}
+		}
+	}
+
+	// creates a new image in video memory, dropping the old one
+	private void create(GraphicsConfiguration gc, int width, int height) {
+		if(image != null)
+			image.flush();
+		image = gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+	}
+
+	// draws all the bricks into the image
+	private void render(TileMap map) {
+		Graphics2D g = (Graphics2D) image.getGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, image.getWidth(null), image.getHeight(null));
+		g.setComposite(AlphaComposite.SrcOver);
+		for(int ty = 0; ty < map.getHeight(); ty++) {
+			for(int tx = 0; tx < map.getWidth(); tx++) {
+				if(map.peek(tx, ty))
+					Sprites.draw(g, Sprites.BRICK, tx * BRICK_WIDTH, ty * BRICK_HEIGHT,
+							BRICK_WIDTH, BRICK_HEIGHT);
+			}
+		}
+		g.dispose();
+		this.map = map;
+		version = map.getVersion();
+	}
+}